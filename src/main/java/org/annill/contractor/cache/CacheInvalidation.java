@@ -0,0 +1,27 @@
+package org.annill.contractor.cache;
+
+import lombok.experimental.UtilityClass;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+@UtilityClass
+public class CacheInvalidation {
+
+    /**
+     * Выполняет действие после фиксации текущей транзакции, а без транзакции сразу. Иначе кэш может успеть перечитать
+     * еще не зафиксированные данные в старом виде
+     */
+    public void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+}
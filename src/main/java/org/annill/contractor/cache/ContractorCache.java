@@ -0,0 +1,98 @@
+package org.annill.contractor.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.annill.contractor.config.ContractorProperties;
+import org.annill.contractor.entity.VersionedContractor;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.stereotype.Component;
+
+/**
+ * Кэш чтения контрагентов по id. Ограничен по размеру и времени жизни, отсутствие контрагента тоже кэшируется, но
+ * коротко. Метрики попаданий, вытеснений и времени загрузки публикуются под именем {@code cache.*{cache=contractor}}
+ * и {@code contractor.cache.load}
+ *
+ * @author anailina
+ */
+@Component
+public class ContractorCache {
+
+    private final Cache<String, Optional<VersionedContractor>> cache;
+    private final Timer loadTimer;
+
+    /**
+     * Счетчик инвалидаций. Значение, загруженное во время записи в базу, может оказаться устаревшим, поэтому оно
+     * попадает в кэш, только если за время загрузки не было ни одной инвалидации
+     */
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public ContractorCache(ContractorProperties properties, MeterRegistry meterRegistry) {
+        ContractorProperties.Cache settings = properties.getCache();
+        Duration ttl = settings.getTtl();
+        Duration negativeTtl = settings.getNegativeTtl();
+        this.cache = Caffeine.newBuilder()
+            .maximumSize(settings.getMaximumSize())
+            .expireAfter(Expiry.writing((String id, Optional<VersionedContractor> contractor) ->
+                contractor.isPresent() ? ttl : negativeTtl))
+            .recordStats()
+            .build();
+        this.loadTimer = Timer.builder("contractor.cache.load").register(meterRegistry);
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "contractor");
+    }
+
+    public VersionedContractor get(String id, Supplier<VersionedContractor> loader) {
+        Optional<VersionedContractor> contractor = cache.getIfPresent(id);
+        if (contractor == null) {
+            long stamp = invalidations.get();
+            contractor = loadTimer.record(() -> load(loader));
+            if (invalidations.get() == stamp) {
+                cache.put(id, contractor);
+            }
+        }
+        return contractor.orElseThrow(() -> new EmptyResultDataAccessException(
+            "Контрагент с ID " + id + " не найден", 1));
+    }
+
+    /**
+     * Версия закэшированного контрагента без обращения к базе
+     *
+     * @return пустой результат, если контрагента нет в кэше или он закэширован как отсутствующий
+     */
+    public Optional<Long> getVersionIfPresent(String id) {
+        Optional<VersionedContractor> contractor = cache.getIfPresent(id);
+        return contractor != null ? contractor.map(VersionedContractor::getVersion) : Optional.empty();
+    }
+
+    public void invalidate(String id) {
+        invalidations.incrementAndGet();
+        cache.invalidate(id);
+    }
+
+    public void invalidateAll(Collection<String> ids) {
+        invalidations.incrementAndGet();
+        cache.invalidateAll(ids);
+    }
+
+    public void invalidateAll() {
+        invalidations.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    private Optional<VersionedContractor> load(Supplier<VersionedContractor> loader) {
+        try {
+            return Optional.of(loader.get());
+        } catch (EmptyResultDataAccessException ex) {
+            return Optional.empty();
+        }
+    }
+
+}
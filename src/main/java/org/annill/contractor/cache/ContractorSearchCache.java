@@ -0,0 +1,110 @@
+package org.annill.contractor.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import lombok.Value;
+import org.annill.contractor.config.ContractorProperties;
+import org.annill.contractor.dto.ContractorDto;
+import org.annill.contractor.filter.ContractorSearch;
+import org.springframework.stereotype.Component;
+
+/**
+ * Короткоживущий кэш результатов поиска контрагентов по каноническому виду фильтра
+ * ({@link ContractorSearch#normalize()}). Объем ограничен примерной оценкой занимаемой памяти
+ * {@code contractor.search-cache.memory-budget}. Любая запись контрагента через репозиторий сбрасывает кэш целиком.
+ * Метрики попаданий и вытеснений публикуются под именем {@code cache.*{cache=contractor_search}}
+ *
+ * @author anailina
+ */
+@Component
+public class ContractorSearchCache {
+
+    /**
+     * Ключ, узел кэша и список результатов
+     */
+    private static final int ENTRY_WEIGHT = 256;
+
+    /**
+     * Объект контрагента без строк
+     */
+    private static final int CONTRACTOR_WEIGHT = 64;
+
+    /**
+     * Объект строки и массив без символов
+     */
+    private static final int STRING_WEIGHT = 40;
+
+    private final Cache<Key, List<ContractorDto>> cache;
+    private final boolean enabled;
+
+    /**
+     * Поколение кэша входит в ключ. Результат, загруженный до сброса, попадает в кэш под старым поколением и больше
+     * не выдается, даже если загрузка закончилась уже после сброса
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    public ContractorSearchCache(ContractorProperties properties, MeterRegistry meterRegistry) {
+        ContractorProperties.SearchCache settings = properties.getSearchCache();
+        this.enabled = settings.isEnabled();
+        this.cache = Caffeine.newBuilder()
+            .maximumWeight(settings.getMemoryBudget().toBytes())
+            .weigher((Key key, List<ContractorDto> contractors) -> weigh(contractors))
+            .expireAfterWrite(settings.getTtl())
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "contractor_search");
+    }
+
+    /**
+     * @param contractorSearch фильтр в каноническом виде
+     * @param loader           поиск в базе по тому же фильтру
+     * @return неизменяемый список
+     */
+    public List<ContractorDto> get(ContractorSearch contractorSearch, Supplier<List<ContractorDto>> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        Key key = new Key(generation.get(), contractorSearch);
+        List<ContractorDto> contractors = cache.getIfPresent(key);
+        if (contractors == null) {
+            contractors = List.copyOf(loader.get());
+            if (generation.get() == key.getGeneration()) {
+                cache.put(key, contractors);
+            }
+        }
+        return contractors;
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    private static int weigh(List<ContractorDto> contractors) {
+        long weight = ENTRY_WEIGHT;
+        for (ContractorDto contractor : contractors) {
+            weight += CONTRACTOR_WEIGHT + weigh(contractor.getId()) + weigh(contractor.getParentId())
+                + weigh(contractor.getName()) + weigh(contractor.getNameFull()) + weigh(contractor.getInn())
+                + weigh(contractor.getOgrn()) + weigh(contractor.getCountry());
+        }
+        return (int) Math.min(weight, Integer.MAX_VALUE);
+    }
+
+    private static long weigh(String value) {
+        return value != null ? STRING_WEIGHT + 2L * value.length() : 0;
+    }
+
+    @Value
+    private static class Key {
+
+        private long generation;
+        private ContractorSearch search;
+
+    }
+
+}
@@ -0,0 +1,26 @@
+package org.annill.contractor.cache;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import lombok.Value;
+import org.annill.contractor.dto.CountryDto;
+
+/**
+ * Неизменяемый снимок активных записей справочников стран, отраслей и организационных форм
+ */
+@Value
+public class ReferenceData {
+
+    private List<CountryDto> countries;
+    private Map<String, CountryDto> countriesById;
+    private Map<Integer, String> industries;
+    private Map<Integer, String> orgForms;
+
+    /**
+     * Хэш содержимого списка стран. Одинаков на всех экземплярах сервиса, пока список не изменился
+     */
+    private String countriesEtag;
+    private Instant loadedAt;
+
+}
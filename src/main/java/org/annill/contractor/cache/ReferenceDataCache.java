@@ -0,0 +1,162 @@
+package org.annill.contractor.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import lombok.extern.slf4j.Slf4j;
+import org.annill.contractor.config.ContractorProperties;
+import org.annill.contractor.converter.CountryConverter;
+import org.annill.contractor.dto.CountryDto;
+import org.annill.contractor.entity.Country;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Кэш справочников стран, отраслей и организационных форм. Справочники маленькие и почти не меняются, поэтому
+ * хранятся целиком в виде неизменяемого снимка, который заменяется атомарно при записи в справочник или по истечении
+ * {@code contractor.reference-cache.ttl}
+ *
+ * @author anailina
+ */
+@Slf4j
+@Component
+public class ReferenceDataCache {
+
+    private static final String COUNTRIES_QUERY = "SELECT * FROM country WHERE is_active = true ORDER BY name";
+
+    private static final String INDUSTRIES_QUERY = "SELECT id, name FROM industry WHERE is_active = true";
+
+    private static final String ORG_FORMS_QUERY = "SELECT id, name FROM org_form WHERE is_active = true";
+
+    private static final String RELOAD = "reference.reload";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final CountryConverter countryConverter;
+    private final Duration ttl;
+    private final Counter hits;
+    private final Counter misses;
+    private final Timer loadTimer;
+    private final SingleFlight singleFlight;
+
+    private final RowMapper<Country> countryRowMapper = (rs, rowNum) -> Country.builder().id(rs.getString("id"))
+        .name(rs.getString("name")).isActive(rs.getBoolean("is_active")).build();
+
+    /**
+     * Блокировка вместо synchronized: загрузка ходит в базу, а блокирующий вызов внутри synchronized закрепляет
+     * виртуальный поток за потоком-носителем
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private volatile ReferenceData snapshot;
+
+    public ReferenceDataCache(NamedParameterJdbcTemplate jdbcTemplate, CountryConverter countryConverter,
+        ContractorProperties properties, MeterRegistry meterRegistry, SingleFlight singleFlight) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.countryConverter = countryConverter;
+        this.ttl = properties.getReferenceCache().getTtl();
+        this.hits = Counter.builder("reference.cache.requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("reference.cache.requests").tag("result", "miss").register(meterRegistry);
+        this.loadTimer = Timer.builder("reference.cache.load").register(meterRegistry);
+        this.singleFlight = singleFlight;
+    }
+
+    public ReferenceData get() {
+        ReferenceData current = snapshot;
+        if (isFresh(current)) {
+            hits.increment();
+            return current;
+        }
+        misses.increment();
+        return reload();
+    }
+
+    /**
+     * Перечитывает справочники из базы. Вызывается после каждой записи в справочник
+     */
+    public ReferenceData refresh() {
+        lock.lock();
+        try {
+            ReferenceData loaded = loadTimer.record(this::load);
+            snapshot = loaded;
+            return loaded;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Одновременные промахи по истечении TTL ждут одну загрузку через {@link SingleFlight}, а не встают в очередь
+     * на блокировку
+     */
+    private ReferenceData reload() {
+        return singleFlight.execute(RELOAD, RELOAD, this::reloadIfStale);
+    }
+
+    /**
+     * Свежесть снимка перепроверяется под блокировкой, поэтому и без объединения вызовов (оно выключено, вызов внутри
+     * пишущей транзакции или истекло ожидание) справочники загружаются один раз, а не каждым ожидающим потоком
+     */
+    private ReferenceData reloadIfStale() {
+        lock.lock();
+        try {
+            ReferenceData current = snapshot;
+            return isFresh(current) ? current : refresh();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isFresh(ReferenceData data) {
+        return data != null && data.getLoadedAt().plus(ttl).isAfter(Instant.now());
+    }
+
+    private ReferenceData load() {
+        List<CountryDto> countries = jdbcTemplate.query(COUNTRIES_QUERY, countryRowMapper).stream()
+            .map(countryConverter::toDto)
+            .toList();
+        Map<String, CountryDto> countriesById = new HashMap<>();
+        countries.forEach(country -> countriesById.put(country.getId(), country));
+
+        ReferenceData data = new ReferenceData(countries, Map.copyOf(countriesById),
+            loadNames(INDUSTRIES_QUERY), loadNames(ORG_FORMS_QUERY), digest(countries), Instant.now());
+        log.info("Справочники загружены: стран {}, отраслей {}, организационных форм {}",
+            countries.size(), data.getIndustries().size(), data.getOrgForms().size());
+        return data;
+    }
+
+    private static String digest(List<CountryDto> countries) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        countries.forEach(country -> {
+            digest.update(country.getId().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(String.valueOf(country.getName()).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+        });
+        return HexFormat.of().formatHex(digest.digest(), 0, 16);
+    }
+
+    private Map<Integer, String> loadNames(String query) {
+        Map<Integer, String> names = new HashMap<>();
+        jdbcTemplate.getJdbcTemplate().query(query, (RowCallbackHandler) rs -> names.put(rs.getInt("id"),
+            rs.getString("name")));
+        return Map.copyOf(names);
+    }
+
+}
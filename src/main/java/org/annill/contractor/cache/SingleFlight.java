@@ -0,0 +1,123 @@
+package org.annill.contractor.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.annill.contractor.config.ContractorProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Объединение одинаковых одновременных чтений: пока запрос в базу с тем же ключом выполняется, остальные вызовы не
+ * идут в базу, а ждут его результат или ошибку. Ожидание ограничено {@code contractor.single-flight.wait-timeout},
+ * после него вызов выполняет запрос сам. Количество объединенных вызовов публикуется в метрике
+ * {@code contractor.coalesced.requests{operation}}, истекшие ожидания — в {@code contractor.coalesced.timeouts}
+ *
+ * @author anailina
+ */
+@Slf4j
+@Component
+public class SingleFlight {
+
+    private final Map<Key, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final ContractorProperties.SingleFlight settings;
+    private final MeterRegistry meterRegistry;
+
+    public SingleFlight(ContractorProperties properties, MeterRegistry meterRegistry) {
+        this.settings = properties.getSingleFlight();
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Внутри пишущей транзакции вызов выполняется отдельно: он должен видеть свои незафиксированные изменения, а его
+     * результат нельзя отдавать другим
+     *
+     * @param operation вид запроса, например {@code contractor.find_by_id}
+     * @param key       параметры запроса, по которым вызовы считаются одинаковыми
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String operation, Object key, Supplier<T> call) {
+        if (!settings.isEnabled() || isWriteTransaction()) {
+            return call.get();
+        }
+
+        Key flightKey = new Key(operation, key);
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> leader = inFlight.putIfAbsent(flightKey, flight);
+        if (leader == null) {
+            return lead(flightKey, flight, call);
+        }
+
+        counter("contractor.coalesced.requests", operation).increment();
+        try {
+            return (T) leader.get(settings.getWaitTimeout().toNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException ex) {
+            counter("contractor.coalesced.timeouts", operation).increment();
+            log.warn("Запрос {} не выполнился за {}, выполняется повторно", operation, settings.getWaitTimeout());
+            return call.get();
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (ex.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(ex.getCause());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Ожидание запроса " + operation + " прервано", ex);
+        }
+    }
+
+    /**
+     * Следующие вызовы с этим ключом не присоединяются к уже выполняющемуся запросу. Вызывается после записи, чтобы
+     * чтение после нее не получило результат, прочитанный до нее
+     */
+    public void forget(String operation, Object key) {
+        inFlight.remove(new Key(operation, key));
+    }
+
+    public void forgetAll(String operation) {
+        inFlight.keySet().removeIf(key -> key.getOperation().equals(operation));
+    }
+
+    private <T> T lead(Key flightKey, CompletableFuture<Object> flight, Supplier<T> call) {
+        try {
+            T result = call.get();
+            flight.complete(result);
+            return result;
+        } catch (RuntimeException | Error ex) {
+            flight.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(flightKey, flight);
+        }
+    }
+
+    private boolean isWriteTransaction() {
+        return TransactionSynchronizationManager.isActualTransactionActive()
+            && !TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+    }
+
+    private Counter counter(String name, String operation) {
+        return Counter.builder(name).tag("operation", operation).register(meterRegistry);
+    }
+
+    @Value
+    private static class Key {
+
+        private String operation;
+        private Object key;
+
+    }
+
+}
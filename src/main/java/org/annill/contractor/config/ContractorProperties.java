@@ -0,0 +1,197 @@
+package org.annill.contractor.config;
+
+import java.time.Duration;
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * Настройки сервиса контрагентов
+ *
+ * @author anailina
+ */
+@Getter
+@Setter
+@ConfigurationProperties(prefix = "contractor")
+public class ContractorProperties {
+
+    private final Export export = new Export();
+    private final Batch batch = new Batch();
+    private final ReferenceCache referenceCache = new ReferenceCache();
+    private final Cache cache = new Cache();
+    private final SearchCache searchCache = new SearchCache();
+    private final SingleFlight singleFlight = new SingleFlight();
+    private final Pool pool = new Pool();
+    private final Hierarchy hierarchy = new Hierarchy();
+    private final Search search = new Search();
+    private final Archive archive = new Archive();
+    private final SlowQuery slowQuery = new SlowQuery();
+
+    @Getter
+    @Setter
+    public static class Export {
+
+        /**
+         * Количество строк, которое драйвер забирает из серверного курсора за один раз
+         */
+        private int fetchSize = 1000;
+
+    }
+
+    @Getter
+    @Setter
+    public static class Batch {
+
+        /**
+         * Количество контрагентов, сохраняемых одним пакетным запросом
+         */
+        private int chunkSize = 1000;
+
+        /**
+         * Наибольшее количество несохраненных контрагентов, перечисляемых в ответе, остальные только считаются
+         */
+        private int maxReportedFailures = 1000;
+
+    }
+
+    @Getter
+    @Setter
+    public static class ReferenceCache {
+
+        /**
+         * Время жизни снимка справочников, после которого он перечитывается из базы при следующем обращении
+         */
+        private Duration ttl = Duration.ofMinutes(10);
+
+    }
+
+    @Getter
+    @Setter
+    public static class Cache {
+
+        /**
+         * Максимальное количество контрагентов в кэше чтения по id
+         */
+        private long maximumSize = 100_000;
+
+        /**
+         * Время жизни найденного контрагента
+         */
+        private Duration ttl = Duration.ofMinutes(5);
+
+        /**
+         * Время жизни отметки об отсутствии контрагента
+         */
+        private Duration negativeTtl = Duration.ofSeconds(5);
+
+    }
+
+    @Getter
+    @Setter
+    public static class SearchCache {
+
+        /**
+         * Кэшировать ли результаты поиска
+         */
+        private boolean enabled = true;
+
+        /**
+         * Время жизни результата. Прямые изменения contractor в базе видны в поиске не позже этого срока
+         */
+        private Duration ttl = Duration.ofSeconds(5);
+
+        /**
+         * Примерный объем памяти под результаты, при превышении вытесняются редко запрашиваемые
+         */
+        private DataSize memoryBudget = DataSize.ofMegabytes(32);
+
+    }
+
+    @Getter
+    @Setter
+    public static class SingleFlight {
+
+        /**
+         * Объединять ли одинаковые одновременные чтения в один запрос к базе
+         */
+        private boolean enabled = true;
+
+        /**
+         * Сколько присоединившийся вызов ждет чужой запрос, прежде чем выполнить его сам
+         */
+        private Duration waitTimeout = Duration.ofSeconds(2);
+
+    }
+
+    @Getter
+    @Setter
+    public static class Pool {
+
+        /**
+         * Ожидание соединения из пула дольше этого времени записывается в журнал как признак нехватки соединений
+         */
+        private Duration acquireWarnThreshold = Duration.ofMillis(100);
+
+    }
+
+    @Getter
+    @Setter
+    public static class Hierarchy {
+
+        /**
+         * Наибольшая глубина обхода группы компаний, она же глубина по умолчанию
+         */
+        private int maxDepth = 32;
+
+    }
+
+    @Getter
+    @Setter
+    public static class Search {
+
+        /**
+         * Если оценка планировщика меньше порога, общее количество считается точно
+         */
+        private long exactCountThreshold = 10_000;
+
+    }
+
+    @Getter
+    @Setter
+    public static class Archive {
+
+        /**
+         * Удаленные контрагенты без изменений дольше этого срока переносятся в contractor_archive
+         */
+        private Duration retention = Duration.ofDays(365);
+
+        /**
+         * Количество контрагентов, переносимых одной транзакцией
+         */
+        private int batchSize = 1000;
+
+    }
+
+    @Getter
+    @Setter
+    public static class SlowQuery {
+
+        /**
+         * Запросы дольше этого времени попадают в журнал медленных запросов
+         */
+        private Duration threshold = Duration.ofMillis(500);
+
+        /**
+         * Сколько последних медленных запросов хранится в памяти
+         */
+        private int capacity = 100;
+
+        /**
+         * Доля медленных запросов на чтение, для которых сразу снимается план EXPLAIN (ANALYZE, BUFFERS), от 0 до 1
+         */
+        private double explainSampleRate = 0;
+
+    }
+
+}
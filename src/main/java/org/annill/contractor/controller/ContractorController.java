@@ -2,11 +2,28 @@ package org.annill.contractor.controller;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 import lombok.extern.slf4j.Slf4j;
 import org.annill.contractor.filter.ContractorSearch;
+import org.annill.contractor.dto.BatchSaveResponseDto;
+import org.annill.contractor.dto.ContractorChangesDto;
 import org.annill.contractor.dto.ContractorDto;
+import org.annill.contractor.dto.ContractorNodeDto;
+import org.annill.contractor.dto.ContractorSearchResultDto;
+import org.annill.contractor.entity.VersionedContractor;
+import org.annill.contractor.export.ContractorExportWriter;
+import org.annill.contractor.export.ExportFormat;
+import org.annill.contractor.filter.PageToken;
+import org.annill.contractor.repository.ContractorChangeRepository;
 import org.annill.contractor.repository.ContractorRepository;
+import org.annill.contractor.service.ContractorBatchService;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.ETag;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -14,8 +31,12 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 /**
  * Контроллер контрагента
@@ -28,25 +49,113 @@ import org.springframework.web.bind.annotation.RestController;
 @Tag(name = "Contractor API", description = "Управление контрагентами")
 public class ContractorController {
 
+    public static final String NEXT_PAGE_TOKEN_HEADER = "X-Next-Page-Token";
+
     private final ContractorRepository repository;
+    private final ContractorExportWriter exportWriter;
+    private final ContractorBatchService batchService;
+    private final ContractorChangeRepository changeRepository;
 
-    public ContractorController(ContractorRepository repository) {
+    public ContractorController(ContractorRepository repository, ContractorExportWriter exportWriter,
+        ContractorBatchService batchService, ContractorChangeRepository changeRepository) {
         this.repository = repository;
+        this.exportWriter = exportWriter;
+        this.batchService = batchService;
+        this.changeRepository = changeRepository;
     }
 
     @PutMapping("/save")
-    @Operation(summary = "Сохранение контрагента")
-    public void save(@RequestBody ContractorDto contractorDto) {
+    @Operation(summary = "Сохранение контрагента",
+        description = "С заголовком If-Match контрагент обновляется, только если его ETag не изменился, иначе "
+            + "возвращается 412. Ответ содержит новый ETag")
+    public ResponseEntity<Void> save(@RequestBody ContractorDto contractorDto,
+        @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         log.info("Сохранение контрагента");
-        repository.saveOrUpdate(contractorDto);
+        long version = ifMatch == null
+            ? repository.saveOrUpdate(contractorDto)
+            : repository.update(contractorDto, parseVersion(ifMatch));
+        return ResponseEntity.ok().eTag(String.valueOf(version)).build();
+    }
+
+    @PutMapping("/save/batch")
+    @Operation(summary = "Пакетное сохранение контрагентов",
+        description = "Принимает JSON-массив или NDJSON и возвращает количество сохраненных и несохраненных "
+            + "контрагентов и причины ошибок, не больше contractor.batch.max-reported-failures")
+    public ResponseEntity<BatchSaveResponseDto> saveBatch(InputStream body) throws IOException {
+        log.info("Пакетное сохранение контрагентов");
+        return ResponseEntity.ok(batchService.saveAll(body));
     }
 
     @GetMapping("/{id}")
-    @Operation(summary = "Поиск контрагента по id")
-    public ResponseEntity<ContractorDto> getById(@PathVariable String id) {
+    @Operation(summary = "Поиск контрагента по id",
+        description = "Ответ содержит ETag. Если он совпадает с If-None-Match, возвращается 304 без тела")
+    public ResponseEntity<ContractorDto> getById(@PathVariable String id, WebRequest request) {
         log.info("Поиск контрагента по id");
-        ContractorDto contractor = repository.findById(id);
-        return ResponseEntity.ok(contractor);
+        if (request.getHeader(HttpHeaders.IF_NONE_MATCH) != null) {
+            String etag = String.valueOf(repository.findVersion(id));
+            if (request.checkNotModified(etag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+            }
+        }
+        VersionedContractor contractor = repository.findVersionedById(id);
+        return ResponseEntity.ok().eTag(String.valueOf(contractor.getVersion())).body(contractor.getContractor());
+    }
+
+    @GetMapping("/by-inn/{inn}")
+    @Operation(summary = "Поиск контрагентов по ИНН",
+        description = "ИНН не уникален, например у обособленных подразделений, поэтому возвращается список")
+    public ResponseEntity<List<ContractorDto>> getByInn(@PathVariable String inn) {
+        log.info("Поиск контрагента по ИНН");
+        return ResponseEntity.ok(repository.findByInn(inn));
+    }
+
+    @GetMapping("/by-ogrn/{ogrn}")
+    @Operation(summary = "Поиск контрагентов по ОГРН")
+    public ResponseEntity<List<ContractorDto>> getByOgrn(@PathVariable String ogrn) {
+        log.info("Поиск контрагента по ОГРН");
+        return ResponseEntity.ok(repository.findByOgrn(ogrn));
+    }
+
+    @PostMapping("/by-inn")
+    @Operation(summary = "Поиск контрагентов по списку ИНН", description = "Не больше 1000 ИНН за запрос")
+    public ResponseEntity<List<ContractorDto>> getByInns(@RequestBody List<String> inns) {
+        log.info("Поиск контрагентов по списку ИНН");
+        return ResponseEntity.ok(repository.findByInns(inns));
+    }
+
+    @PostMapping("/by-ogrn")
+    @Operation(summary = "Поиск контрагентов по списку ОГРН", description = "Не больше 1000 ОГРН за запрос")
+    public ResponseEntity<List<ContractorDto>> getByOgrns(@RequestBody List<String> ogrns) {
+        log.info("Поиск контрагентов по списку ОГРН");
+        return ResponseEntity.ok(repository.findByOgrns(ogrns));
+    }
+
+    @GetMapping("/{id}/descendants")
+    @Operation(summary = "Дочерние компании контрагента",
+        description = "Все уровни группы до глубины depth плоским списком, первым идет сам контрагент с depth = 0. "
+            + "Без depth группа глубже contractor.hierarchy.max-depth отклоняется с ответом 400")
+    public ResponseEntity<List<ContractorNodeDto>> getDescendants(@PathVariable String id,
+        @RequestParam(required = false) Integer depth) {
+        log.info("Поиск дочерних компаний контрагента");
+        return ResponseEntity.ok(repository.findDescendants(id, depth));
+    }
+
+    @GetMapping("/{id}/ancestors")
+    @Operation(summary = "Головные компании контрагента",
+        description = "Цепочка от самого контрагента (depth = 0) до верхней головной компании. "
+            + "Без depth цепочка длиннее contractor.hierarchy.max-depth отклоняется с ответом 400")
+    public ResponseEntity<List<ContractorNodeDto>> getAncestors(@PathVariable String id,
+        @RequestParam(required = false) Integer depth) {
+        log.info("Поиск головных компаний контрагента");
+        return ResponseEntity.ok(repository.findAncestors(id, depth));
+    }
+
+    @GetMapping("/{id}/is-descendant-of/{ancestorId}")
+    @Operation(summary = "Проверка вхождения контрагента в группу",
+        description = "true, если ancestorId является головной компанией контрагента на любом уровне")
+    public ResponseEntity<Boolean> isDescendantOf(@PathVariable String id, @PathVariable String ancestorId) {
+        log.info("Проверка вхождения контрагента в группу");
+        return ResponseEntity.ok(repository.isDescendant(id, ancestorId));
     }
 
     @DeleteMapping("/delete/{id}")
@@ -57,12 +166,76 @@ public class ContractorController {
     }
 
     @PostMapping("/search")
-    @Operation(summary = "Поиск контрагента по фильтру")
+    @Operation(summary = "Поиск контрагента по фильтру",
+        description = "searchFilter без учета регистра: текст от трех символов ищется как подстрока в name и "
+            + "name_full, более короткий — только по началу name. Цифры дополнительно ищутся по началу ИНН и ОГРН. "
+            + "Символы % и _ ищутся как обычные символы. Если страница заполнена полностью, в заголовке "
+            + "X-Next-Page-Token возвращается токен для запроса следующей страницы через поле pageToken")
     public ResponseEntity<List<ContractorDto>> search(
         @RequestBody ContractorSearch contractorSearch
     ) {
         log.info("Поиск контрагента по фильтру");
-        return ResponseEntity.ok(repository.search(contractorSearch));
+        List<ContractorDto> contractors = repository.search(contractorSearch);
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        String nextPageToken = PageToken.next(contractors, contractorSearch.normalize().getLimit());
+        if (nextPageToken != null) {
+            response.header(NEXT_PAGE_TOKEN_HEADER, nextPageToken);
+        }
+        return response.body(contractors);
+    }
+
+    @PostMapping("/search/page")
+    @Operation(summary = "Поиск контрагента по фильтру с общим количеством и разбивкой по справочникам",
+        description = "total — общее количество по фильтру, facets — количество по странам, отраслям и "
+            + "организационным формам. Считаются отдельным от страницы запросом, вместе со страницей возвращается "
+            + "nextPageToken. "
+            + "Для широких фильтров без facets total — оценка планировщика (countMode = ESTIMATED), "
+            + "exactTotal=true требует точный подсчет")
+    public ResponseEntity<ContractorSearchResultDto> searchPage(@RequestBody ContractorSearch contractorSearch,
+        @RequestParam(defaultValue = "true") boolean total, @RequestParam(defaultValue = "false") boolean facets,
+        @RequestParam(defaultValue = "false") boolean exactTotal) {
+        log.info("Поиск контрагента по фильтру с количеством");
+        return ResponseEntity.ok(repository.searchPage(contractorSearch, total, facets, exactTotal));
+    }
+
+    @GetMapping("/changes")
+    @Operation(summary = "Лента изменений контрагентов",
+        description = "Изменения после курсора since вместе с текущим состоянием контрагентов. Без since лента читается "
+            + "с начала, nextCursor из ответа передается в следующий запрос. limit — от 1 до 10000")
+    public ResponseEntity<ContractorChangesDto> getChanges(@RequestParam(required = false) String since,
+        @RequestParam(defaultValue = "1000") int limit) {
+        log.info("Чтение ленты изменений контрагентов");
+        return ResponseEntity.ok(changeRepository.findChanges(since, limit));
+    }
+
+    @GetMapping("/export")
+    @Operation(summary = "Потоковая выгрузка всех активных контрагентов",
+        description = "Поддерживаемые форматы: ndjson, csv")
+    public ResponseEntity<StreamingResponseBody> export(@RequestParam(defaultValue = "ndjson") String format) {
+        log.info("Выгрузка контрагентов");
+        ExportFormat exportFormat = ExportFormat.of(format);
+        StreamingResponseBody body = outputStream -> {
+            try (ContractorExportWriter.Sink sink = exportWriter.open(exportFormat, outputStream)) {
+                repository.export(sink);
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.parseMediaType(exportFormat.getContentType())).body(body);
+    }
+
+    /**
+     * Версия из If-Match. Поддерживается один ETag, выданный сервисом
+     */
+    private static long parseVersion(String ifMatch) {
+        List<ETag> etags = ETag.parse(ifMatch);
+        if (etags.size() != 1 || etags.getFirst().isWildcard()) {
+            throw new IllegalArgumentException("If-Match должен содержать один ETag контрагента");
+        }
+        try {
+            return Long.parseLong(etags.getFirst().tag());
+        } catch (NumberFormatException ex) {
+            throw new OptimisticLockingFailureException("ETag " + ifMatch + " не выдавался сервисом");
+        }
     }
 
 }
@@ -32,17 +32,20 @@ public class CountryController {
     private final CountryRepository repository;
 
     @GetMapping("/all")
-    @Operation(description = "Поиск всех стран")
+    @Operation(description = "Поиск всех стран. Ответ содержит ETag списка стран, если он совпадает с If-None-Match, "
+        + "возвращается 304 без тела")
     public ResponseEntity<List<CountryDto>> findAll() {
         log.info("Поиск стран");
-        return ResponseEntity.ok(repository.findAll());
+        String etag = repository.findCountriesEtag();
+        return ResponseEntity.ok().eTag(etag).body(repository.findAll());
     }
 
     @GetMapping("/{id}")
-    @Operation(description = "Поиск страны по id")
+    @Operation(description = "Поиск страны по id. ETag общий со списком стран")
     public ResponseEntity<CountryDto> getById(@PathVariable String id) {
         log.info("Поиск страны по id");
-        return ResponseEntity.ok(repository.findById(id));
+        String etag = repository.findCountriesEtag();
+        return ResponseEntity.ok().eTag(etag).body(repository.findById(id));
     }
 
     @PutMapping("/save")
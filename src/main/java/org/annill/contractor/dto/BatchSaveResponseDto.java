@@ -0,0 +1,22 @@
+package org.annill.contractor.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import java.util.List;
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Итог пакетного сохранения: количество сохраненных и несохраненных контрагентов и причины ошибок. Список ошибок
+ * ограничен {@code contractor.batch.max-reported-failures}, {@code failuresTruncated} отмечает, что ошибок было больше
+ */
+@Value
+@Builder(toBuilder = true)
+@Schema
+public class BatchSaveResponseDto {
+
+    private int saved;
+    private int failed;
+    private List<BatchSaveResultDto> failures;
+    private boolean failuresTruncated;
+
+}
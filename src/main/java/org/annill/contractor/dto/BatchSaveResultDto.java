@@ -0,0 +1,20 @@
+package org.annill.contractor.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Value;
+
+@Value
+@Builder(toBuilder = true)
+@Schema
+public class BatchSaveResultDto {
+
+    private String id;
+    private BatchSaveStatus status;
+    private String message;
+
+    public static BatchSaveResultDto failed(String id, String message) {
+        return BatchSaveResultDto.builder().id(id).status(BatchSaveStatus.FAILED).message(message).build();
+    }
+
+}
@@ -0,0 +1,8 @@
+package org.annill.contractor.dto;
+
+public enum BatchSaveStatus {
+
+    SAVED,
+    FAILED
+
+}
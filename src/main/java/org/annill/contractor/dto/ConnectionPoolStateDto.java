@@ -0,0 +1,21 @@
+package org.annill.contractor.dto;
+
+import lombok.Builder;
+import lombok.Value;
+
+@Value
+@Builder(toBuilder = true)
+public class ConnectionPoolStateDto {
+
+    private String poolName;
+    private int maximumPoolSize;
+    private long connectionTimeoutMs;
+    private int active;
+    private int idle;
+    private int pending;
+    private int total;
+    private long acquireCount;
+    private double acquireMeanMs;
+    private double acquireMaxMs;
+
+}
@@ -0,0 +1,19 @@
+package org.annill.contractor.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import java.time.LocalDateTime;
+import lombok.Value;
+
+/**
+ * Изменение контрагента в ленте. {@code contractor} — текущее состояние записи, пустое, если контрагент удален
+ */
+@Value
+@Schema
+public class ContractorChangeDto {
+
+    private String contractorId;
+    private String operation;
+    private LocalDateTime changeDate;
+    private ContractorDto contractor;
+
+}
@@ -0,0 +1,17 @@
+package org.annill.contractor.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import java.util.List;
+import lombok.Value;
+
+/**
+ * Порция ленты изменений. {@code nextCursor} передается в следующий запрос, даже если порция пустая
+ */
+@Value
+@Schema
+public class ContractorChangesDto {
+
+    private List<ContractorChangeDto> changes;
+    private String nextCursor;
+
+}
@@ -1,11 +1,13 @@
 package org.annill.contractor.dto;
 
 import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Value;
 
 @Value
 @Builder(toBuilder = true)
+@AllArgsConstructor
 @Schema
 public class ContractorDto {
 
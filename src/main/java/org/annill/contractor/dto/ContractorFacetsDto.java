@@ -0,0 +1,17 @@
+package org.annill.contractor.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import java.util.List;
+import lombok.Builder;
+import lombok.Value;
+
+@Value
+@Builder(toBuilder = true)
+@Schema
+public class ContractorFacetsDto {
+
+    private List<FacetDto> countries;
+    private List<FacetDto> industries;
+    private List<FacetDto> orgForms;
+
+}
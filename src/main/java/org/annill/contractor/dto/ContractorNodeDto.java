@@ -0,0 +1,18 @@
+package org.annill.contractor.dto;
+
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Value;
+
+/**
+ * Контрагент в составе группы. {@code depth} — расстояние от контрагента, с которого начат обход
+ */
+@Value
+@Schema
+public class ContractorNodeDto {
+
+    private int depth;
+    @JsonUnwrapped
+    private ContractorDto contractor;
+
+}
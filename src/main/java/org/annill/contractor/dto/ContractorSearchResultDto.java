@@ -0,0 +1,23 @@
+package org.annill.contractor.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import java.util.List;
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Страница поиска вместе с общим количеством и разбивкой по справочникам. {@code total} и {@code facets} заполняются,
+ * только если их запросили, {@code countMode} показывает, точное количество или оценка
+ */
+@Value
+@Builder(toBuilder = true)
+@Schema
+public class ContractorSearchResultDto {
+
+    private List<ContractorDto> items;
+    private String nextPageToken;
+    private Long total;
+    private CountMode countMode;
+    private ContractorFacetsDto facets;
+
+}
@@ -0,0 +1,18 @@
+package org.annill.contractor.dto;
+
+/**
+ * Как посчитано общее количество в результате поиска
+ */
+public enum CountMode {
+
+    /**
+     * count(*) по фильтру
+     */
+    EXACT,
+
+    /**
+     * Оценка планировщика PostgreSQL по статистике таблицы
+     */
+    ESTIMATED
+
+}
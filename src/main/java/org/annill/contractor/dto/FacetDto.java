@@ -0,0 +1,20 @@
+package org.annill.contractor.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Количество найденных контрагентов с одним значением справочника. Пустые {@code id} и {@code name} — значение не
+ * заполнено
+ */
+@Value
+@Builder(toBuilder = true)
+@Schema
+public class FacetDto {
+
+    private String id;
+    private String name;
+    private long count;
+
+}
@@ -0,0 +1,24 @@
+package org.annill.contractor.dto;
+
+import java.time.Instant;
+import java.util.Map;
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Медленный запрос. Значения строковых параметров скрыты, {@code plan} заполнен, если план был снят
+ */
+@Value
+@Builder(toBuilder = true)
+public class SlowQueryDto {
+
+    private long id;
+    private String query;
+    private String shape;
+    private String sql;
+    private Map<String, String> params;
+    private double durationMs;
+    private Instant recordedAt;
+    private String plan;
+
+}
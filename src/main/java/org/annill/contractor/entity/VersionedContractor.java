@@ -0,0 +1,15 @@
+package org.annill.contractor.entity;
+
+import lombok.Value;
+import org.annill.contractor.dto.ContractorDto;
+
+/**
+ * Контрагент вместе с версией строки, из которой строится ETag
+ */
+@Value
+public class VersionedContractor {
+
+    private ContractorDto contractor;
+    private long version;
+
+}
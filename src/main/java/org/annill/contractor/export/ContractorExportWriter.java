@@ -0,0 +1,134 @@
+package org.annill.contractor.export;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+import org.annill.contractor.dto.ContractorDto;
+import org.springframework.stereotype.Component;
+
+/**
+ * Построчная запись контрагентов в поток ответа без накопления в памяти
+ *
+ * @author anailina
+ */
+@Component
+public class ContractorExportWriter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String CSV_HEADER = "id,parent_id,name,name_full,inn,ogrn,country,industry,org_form";
+
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter contractorWriter;
+
+    public ContractorExportWriter(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.contractorWriter = objectMapper.writerFor(ContractorDto.class)
+            .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    public Sink open(ExportFormat format, OutputStream outputStream) throws IOException {
+        return switch (format) {
+            case NDJSON -> new NdjsonSink(objectMapper.getFactory().createGenerator(outputStream));
+            case CSV -> new CsvSink(new BufferedWriter(
+                new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), BUFFER_SIZE));
+        };
+    }
+
+    /**
+     * Приемник строк выгрузки. Ошибки ввода-вывода пробрасываются как {@link UncheckedIOException}, чтобы приемник
+     * можно было передать в построчный обработчик репозитория
+     */
+    public interface Sink extends Consumer<ContractorDto>, Closeable {
+
+    }
+
+    private final class NdjsonSink implements Sink {
+
+        private final JsonGenerator generator;
+
+        private NdjsonSink(JsonGenerator generator) {
+            this.generator = generator;
+            this.generator.setRootValueSeparator(null);
+        }
+
+        @Override
+        public void accept(ContractorDto contractor) {
+            try {
+                contractorWriter.writeValue(generator, contractor);
+                generator.writeRaw('\n');
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            generator.close();
+        }
+
+    }
+
+    private static final class CsvSink implements Sink {
+
+        private final Writer writer;
+
+        private CsvSink(Writer writer) throws IOException {
+            this.writer = writer;
+            this.writer.write(CSV_HEADER);
+            this.writer.write('\n');
+        }
+
+        @Override
+        public void accept(ContractorDto contractor) {
+            try {
+                writeField(contractor.getId(), true);
+                writeField(contractor.getParentId(), true);
+                writeField(contractor.getName(), true);
+                writeField(contractor.getNameFull(), true);
+                writeField(contractor.getInn(), true);
+                writeField(contractor.getOgrn(), true);
+                writeField(contractor.getCountry(), true);
+                writeField(contractor.getIndustry(), true);
+                writeField(contractor.getOrgForm(), false);
+                writer.write('\n');
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+
+        private void writeField(Object value, boolean hasNext) throws IOException {
+            if (value != null) {
+                String text = value.toString();
+                if (text.indexOf(',') >= 0 || text.indexOf('"') >= 0 || text.indexOf('\n') >= 0
+                    || text.indexOf('\r') >= 0) {
+                    writer.write('"');
+                    writer.write(text.replace("\"", "\"\""));
+                    writer.write('"');
+                } else {
+                    writer.write(text);
+                }
+            }
+            if (hasNext) {
+                writer.write(',');
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,24 @@
+package org.annill.contractor.export;
+
+import java.util.Locale;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+@Getter
+@RequiredArgsConstructor
+public enum ExportFormat {
+
+    NDJSON("application/x-ndjson;charset=UTF-8"),
+    CSV("text/csv;charset=UTF-8");
+
+    private final String contentType;
+
+    public static ExportFormat of(String value) {
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Неподдерживаемый формат выгрузки: " + value);
+        }
+    }
+
+}
@@ -0,0 +1,48 @@
+package org.annill.contractor.filter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import lombok.Value;
+
+/**
+ * Позиция в ленте изменений контрагентов: номер транзакции и порядковый номер записи журнала
+ *
+ * @author anailina
+ */
+@Value
+public class ChangeCursor {
+
+    /**
+     * Начало журнала
+     */
+    public static final ChangeCursor START = new ChangeCursor("0", 0);
+
+    private static final char SEPARATOR = ':';
+
+    private String txId;
+    private long seq;
+
+    public String encode() {
+        String raw = txId + SEPARATOR + seq;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param cursor курсор из предыдущего ответа или null для чтения с начала журнала
+     */
+    public static ChangeCursor decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return START;
+        }
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separatorIndex = raw.indexOf(SEPARATOR);
+            String txId = raw.substring(0, separatorIndex);
+            Long.parseUnsignedLong(txId);
+            return new ChangeCursor(txId, Long.parseLong(raw.substring(separatorIndex + 1)));
+        } catch (RuntimeException ex) {
+            throw new IllegalArgumentException("Некорректный курсор ленты изменений");
+        }
+    }
+
+}
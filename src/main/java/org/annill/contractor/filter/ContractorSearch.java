@@ -1,14 +1,20 @@
 package org.annill.contractor.filter;
 
+import java.util.Locale;
 import jdk.jfr.Name;
 import lombok.Builder;
 import lombok.Value;
 import org.annill.contractor.entity.Industry;
+import org.apache.commons.lang3.StringUtils;
 
 @Value
 @Builder(toBuilder = true)
 public class ContractorSearch {
 
+    public static final int DEFAULT_LIMIT = 100;
+
+    public static final int MAX_LIMIT = 1000;
+
     @Name("contractor_id")
     private String id;
     @Name("parent_id")
@@ -21,5 +27,35 @@ public class ContractorSearch {
     private String orgForm;
     private Integer limit;
     private Integer offset;
+    @Name("page_token")
+    private String pageToken;
+
+    /**
+     * Фильтр в каноническом виде: пробелы по краям убраны, пустые значения заменены на null, фильтры без учета регистра
+     * приведены к нижнему регистру, лимит по умолчанию {@link #DEFAULT_LIMIT}, смещение по умолчанию 0. Фильтры с
+     * одинаковым каноническим видом находят одни и те же записи
+     *
+     * @throws IllegalArgumentException если лимит вне 1..{@link #MAX_LIMIT} или смещение отрицательное
+     */
+    public ContractorSearch normalize() {
+        if (limit != null && (limit < 1 || limit > MAX_LIMIT)) {
+            throw new IllegalArgumentException("Размер страницы поиска должен быть от 1 до " + MAX_LIMIT);
+        }
+        if (offset != null && offset < 0) {
+            throw new IllegalArgumentException("Смещение страницы поиска не может быть отрицательным");
+        }
+        String industryName = industry != null ? StringUtils.stripToNull(industry.getName()) : null;
+        return ContractorSearch.builder()
+            .id(StringUtils.stripToNull(id))
+            .parentId(StringUtils.stripToNull(parentId))
+            .searchFilter(StringUtils.lowerCase(StringUtils.stripToNull(searchFilter), Locale.ROOT))
+            .country(StringUtils.lowerCase(StringUtils.stripToNull(country), Locale.ROOT))
+            .industry(industryName != null ? Industry.builder().name(industryName).build() : null)
+            .orgForm(StringUtils.lowerCase(StringUtils.stripToNull(orgForm), Locale.ROOT))
+            .limit(limit != null ? limit : DEFAULT_LIMIT)
+            .offset(offset != null ? offset : 0)
+            .pageToken(StringUtils.stripToNull(pageToken))
+            .build();
+    }
 
 }
@@ -0,0 +1,57 @@
+package org.annill.contractor.filter;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import lombok.Value;
+import org.annill.contractor.dto.ContractorDto;
+
+/**
+ * Токен продолжения для постраничного поиска по ключу (name, id)
+ *
+ * @author anailina
+ */
+@Value
+public class PageToken {
+
+    private static final char SEPARATOR = ':';
+
+    private String name;
+    private String id;
+
+    public static PageToken of(ContractorDto lastContractor) {
+        return new PageToken(lastContractor.getName(), lastContractor.getId());
+    }
+
+    /**
+     * @return токен следующей страницы или null, если страница заполнена не полностью и продолжения нет
+     */
+    public static String next(List<ContractorDto> page, Integer limit) {
+        if (limit == null || page.isEmpty() || page.size() != limit) {
+            return null;
+        }
+        return of(page.getLast()).encode();
+    }
+
+    /**
+     * Формат до кодирования: длина id, разделитель, id и name без разделителей, так как name может содержать любые
+     * символы
+     */
+    public String encode() {
+        String raw = id.length() + String.valueOf(SEPARATOR) + id + name;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static PageToken decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separatorIndex = raw.indexOf(SEPARATOR);
+            int idLength = Integer.parseInt(raw.substring(0, separatorIndex));
+            int idEnd = separatorIndex + 1 + idLength;
+            return new PageToken(raw.substring(idEnd), raw.substring(separatorIndex + 1, idEnd));
+        } catch (RuntimeException ex) {
+            throw new IllegalArgumentException("Некорректный токен страницы");
+        }
+    }
+
+}
@@ -0,0 +1,56 @@
+package org.annill.contractor.monitoring;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.annill.contractor.dto.ConnectionPoolStateDto;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * Состояние пула соединений: {@code GET /actuator/pool}
+ *
+ * @author anailina
+ */
+@Component
+@Endpoint(id = "pool")
+public class ConnectionPoolEndpoint {
+
+    private final HikariDataSource dataSource;
+    private final MeterRegistry meterRegistry;
+
+    public ConnectionPoolEndpoint(DataSource dataSource, MeterRegistry meterRegistry) throws SQLException {
+        this.dataSource = dataSource.unwrap(HikariDataSource.class);
+        this.meterRegistry = meterRegistry;
+    }
+
+    @ReadOperation
+    public ConnectionPoolStateDto pool() {
+        ConnectionPoolStateDto.ConnectionPoolStateDtoBuilder state = ConnectionPoolStateDto.builder()
+            .poolName(dataSource.getPoolName())
+            .maximumPoolSize(dataSource.getMaximumPoolSize())
+            .connectionTimeoutMs(dataSource.getConnectionTimeout());
+
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        if (pool != null) {
+            state.active(pool.getActiveConnections())
+                .idle(pool.getIdleConnections())
+                .pending(pool.getThreadsAwaitingConnection())
+                .total(pool.getTotalConnections());
+        }
+
+        Timer acquire = meterRegistry.find("hikaricp.connections.acquire").tag("pool", dataSource.getPoolName()).timer();
+        if (acquire != null) {
+            state.acquireCount(acquire.count())
+                .acquireMeanMs(acquire.mean(TimeUnit.MILLISECONDS))
+                .acquireMaxMs(acquire.max(TimeUnit.MILLISECONDS));
+        }
+        return state.build();
+    }
+
+}
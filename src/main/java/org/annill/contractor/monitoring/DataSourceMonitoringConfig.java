@@ -0,0 +1,32 @@
+package org.annill.contractor.monitoring;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.annill.contractor.config.ContractorProperties;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration(proxyBeanMethods = false)
+public class DataSourceMonitoringConfig {
+
+    /**
+     * Оборачивает пул Hikari в {@link PoolMonitoringDataSource}. Метрики hikaricp.* по-прежнему публикуются, так как
+     * обертка отдает исходный пул через unwrap
+     */
+    @Bean
+    public static BeanPostProcessor poolMonitoringDataSourcePostProcessor(
+        ObjectProvider<ContractorProperties> properties) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof HikariDataSource hikariDataSource) {
+                    return new PoolMonitoringDataSource(hikariDataSource,
+                        properties.getObject().getPool().getAcquireWarnThreshold());
+                }
+                return bean;
+            }
+        };
+    }
+
+}
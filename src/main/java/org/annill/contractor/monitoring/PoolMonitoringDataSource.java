@@ -0,0 +1,78 @@
+package org.annill.contractor.monitoring;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import jakarta.servlet.http.HttpServletRequest;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Обертка пула соединений, которая записывает в журнал долгое ожидание соединения вместе с HTTP-запросом, ради которого
+ * соединение запрашивалось, и состоянием пула в этот момент
+ *
+ * @author anailina
+ */
+@Slf4j
+public class PoolMonitoringDataSource extends DelegatingDataSource {
+
+    private final HikariDataSource hikariDataSource;
+    private final long warnThresholdNanos;
+
+    public PoolMonitoringDataSource(HikariDataSource hikariDataSource, Duration warnThreshold) {
+        super(hikariDataSource);
+        this.hikariDataSource = hikariDataSource;
+        this.warnThresholdNanos = warnThreshold.toNanos();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return super.getConnection();
+        } finally {
+            checkAcquireTime(start);
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        long start = System.nanoTime();
+        try {
+            return super.getConnection(username, password);
+        } finally {
+            checkAcquireTime(start);
+        }
+    }
+
+    private void checkAcquireTime(long start) {
+        long waited = System.nanoTime() - start;
+        if (waited < warnThresholdNanos) {
+            return;
+        }
+        HikariPoolMXBean pool = hikariDataSource.getHikariPoolMXBean();
+        if (pool == null) {
+            return;
+        }
+        log.warn("Нехватка соединений: ожидание {} мс, запрос {}, активных {}, свободных {}, ожидающих {}",
+            Duration.ofNanos(waited).toMillis(), currentEndpoint(), pool.getActiveConnections(),
+            pool.getIdleConnections(), pool.getThreadsAwaitingConnection());
+    }
+
+    private static String currentEndpoint() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes servletAttributes)) {
+            return "вне HTTP-запроса";
+        }
+        HttpServletRequest request = servletAttributes.getRequest();
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        return request.getMethod() + " " + (pattern != null ? pattern : request.getRequestURI());
+    }
+
+}
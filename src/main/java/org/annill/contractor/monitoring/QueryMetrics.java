@@ -0,0 +1,99 @@
+package org.annill.contractor.monitoring;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.ToIntFunction;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.stereotype.Component;
+
+/**
+ * Время выполнения и количество строк по каждому запросу репозиториев. Метрики {@code contractor.db.query} и
+ * {@code contractor.db.query.rows} помечены видом запроса {@code query} и, для запросов с переменным набором условий,
+ * формой {@code shape}. Медленные запросы дополнительно передаются в {@link SlowQueryRecorder}
+ * <p>
+ * Запрос передается вызову вместе с параметрами, чтобы записанный текст запроса всегда совпадал с выполненным
+ *
+ * @author anailina
+ */
+@Component
+public class QueryMetrics {
+
+    public static final String NO_SHAPE = "none";
+
+    private static final String TIMER_NAME = "contractor.db.query";
+
+    private static final String ROWS_NAME = "contractor.db.query.rows";
+
+    private final MeterRegistry meterRegistry;
+    private final SlowQueryRecorder slowQueryRecorder;
+
+    public QueryMetrics(MeterRegistry meterRegistry, SlowQueryRecorder slowQueryRecorder) {
+        this.meterRegistry = meterRegistry;
+        this.slowQueryRecorder = slowQueryRecorder;
+    }
+
+    public <P, T> List<T> list(String query, String sql, P params, BiFunction<String, P, List<T>> call) {
+        return list(query, NO_SHAPE, sql, params, call);
+    }
+
+    public <P, T> List<T> list(String query, String shape, String sql, P params, BiFunction<String, P, List<T>> call) {
+        return record(query, shape, sql, params, call, List::size);
+    }
+
+    /**
+     * Запрос одной строки или одного значения
+     */
+    public <P, T> T single(String query, String sql, P params, BiFunction<String, P, T> call) {
+        return record(query, NO_SHAPE, sql, params, call, result -> result != null ? 1 : 0);
+    }
+
+    /**
+     * Изменяющий запрос, результат — количество затронутых строк
+     */
+    public <P> int update(String query, String sql, P params, BiFunction<String, P, Integer> call) {
+        return record(query, NO_SHAPE, sql, params, call, Integer::intValue);
+    }
+
+    /**
+     * Выполняет запрос и записывает время и количество строк. Время записывается и при ошибке, с тегом
+     * {@code outcome=error}, запрос одной строки без результата помечается {@code outcome=empty}
+     *
+     * @param sql    текст запроса, передается в {@code call}. null — запрос не записывается в журнал медленных запросов
+     * @param params параметры запроса: {@link java.util.Map} или {@link org.springframework.jdbc.core.namedparam.SqlParameterSource}
+     * @param rows   количество строк по результату запроса
+     */
+    public <P, T> T record(String query, String shape, String sql, P params, BiFunction<String, P, T> call,
+        ToIntFunction<T> rows) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        try {
+            T result = call.apply(sql, params);
+            outcome = "success";
+            recordRows(query, shape, rows.applyAsInt(result));
+            return result;
+        } catch (EmptyResultDataAccessException ex) {
+            outcome = "empty";
+            recordRows(query, shape, 0);
+            throw ex;
+        } finally {
+            long duration = sample.stop(Timer.builder(TIMER_NAME)
+                .tag("query", query)
+                .tag("shape", shape)
+                .tag("outcome", outcome)
+                .register(meterRegistry));
+            slowQueryRecorder.record(query, shape, sql, params, duration);
+        }
+    }
+
+    private void recordRows(String query, String shape, int rows) {
+        DistributionSummary.builder(ROWS_NAME)
+            .tag("query", query)
+            .tag("shape", shape)
+            .register(meterRegistry)
+            .record(rows);
+    }
+
+}
@@ -0,0 +1,43 @@
+package org.annill.contractor.monitoring;
+
+import java.util.List;
+import org.annill.contractor.dto.SlowQueryDto;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+/**
+ * Журнал медленных запросов: {@code GET /actuator/slowqueries}. {@code POST /actuator/slowqueries/{id}} снимает план
+ * запроса на чтение, {@code DELETE /actuator/slowqueries} очищает журнал
+ *
+ * @author anailina
+ */
+@Component
+@Endpoint(id = "slowqueries")
+public class SlowQueryEndpoint {
+
+    private final SlowQueryRecorder recorder;
+
+    public SlowQueryEndpoint(SlowQueryRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    @ReadOperation
+    public List<SlowQueryDto> slowQueries() {
+        return recorder.findAll();
+    }
+
+    @WriteOperation
+    public SlowQueryDto explain(@Selector long id) {
+        return recorder.explain(id).orElse(null);
+    }
+
+    @DeleteOperation
+    public void clear() {
+        recorder.clear();
+    }
+
+}
@@ -0,0 +1,217 @@
+package org.annill.contractor.monitoring;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+import lombok.extern.slf4j.Slf4j;
+import org.annill.contractor.config.ContractorProperties;
+import org.annill.contractor.dto.SlowQueryDto;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Журнал последних медленных запросов: вид и форма запроса, текст SQL, параметры со скрытыми значениями и время
+ * выполнения. Для запросов на чтение план EXPLAIN (ANALYZE, BUFFERS) снимается выборочно по
+ * {@code contractor.slow-query.explain-sample-rate} или по требованию через {@link SlowQueryEndpoint}. План выполняет
+ * запрос повторно на отдельном соединении, поэтому одновременно снимается не больше одного выборочного плана
+ * <p>
+ * Настоящие значения параметров хранятся только в памяти для повторного выполнения. В плане условия могут быть
+ * показаны вместе со значениями, поэтому доступ к endpoint нужно ограничивать так же, как к остальным actuator
+ *
+ * @author anailina
+ */
+@Slf4j
+@Component
+public class SlowQueryRecorder {
+
+    private static final String EXPLAIN_PREFIX = "EXPLAIN (ANALYZE, BUFFERS) ";
+
+    private static final Pattern READ_STATEMENT = Pattern.compile("^\\s*(SELECT|WITH)\\b", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern WRITE_STATEMENT = Pattern.compile("\\b(INSERT|UPDATE|DELETE|MERGE)\\b",
+        Pattern.CASE_INSENSITIVE);
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final ContractorProperties properties;
+    private final AtomicLong ids = new AtomicLong();
+    private final AtomicBoolean sampling = new AtomicBoolean();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Deque<Entry> entries = new ArrayDeque<>();
+
+    public SlowQueryRecorder(NamedParameterJdbcTemplate jdbcTemplate, ContractorProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.properties = properties;
+    }
+
+    /**
+     * Запоминает запрос, если он выполнялся дольше {@code contractor.slow-query.threshold}
+     *
+     * @param sql текст запроса или null, если запрос не нужно записывать (например, выгрузка, время которой зависит
+     *            от клиента)
+     */
+    public void record(String query, String shape, String sql, Object params, long durationNanos) {
+        ContractorProperties.SlowQuery settings = properties.getSlowQuery();
+        if (sql == null || durationNanos < settings.getThreshold().toNanos()) {
+            return;
+        }
+
+        Entry entry = new Entry(ids.incrementAndGet(), query, shape, sql, toParameterSource(params), durationNanos,
+            Instant.now());
+        lock.lock();
+        try {
+            entries.addFirst(entry);
+            while (entries.size() > settings.getCapacity()) {
+                entries.removeLast();
+            }
+        } finally {
+            lock.unlock();
+        }
+        log.warn("Медленный запрос {} ({}): {} мс, параметры {}", query, shape,
+            TimeUnit.NANOSECONDS.toMillis(durationNanos), redact(entry.params));
+
+        if (isExplainable(sql) && ThreadLocalRandom.current().nextDouble() < settings.getExplainSampleRate()
+            && sampling.compareAndSet(false, true)) {
+            Thread.ofVirtual().name("slow-query-explain").start(() -> {
+                try {
+                    explain(entry);
+                } finally {
+                    sampling.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * @return медленные запросы от последнего к первому
+     */
+    public List<SlowQueryDto> findAll() {
+        lock.lock();
+        try {
+            return entries.stream().map(Entry::toDto).toList();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Снимает план запроса из журнала. Изменяющие запросы не выполняются повторно и возвращаются без плана
+     */
+    public Optional<SlowQueryDto> explain(long id) {
+        Optional<Entry> entry = find(id);
+        entry.filter(found -> isExplainable(found.sql)).ifPresent(this::explain);
+        return entry.map(Entry::toDto);
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            entries.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Optional<Entry> find(long id) {
+        lock.lock();
+        try {
+            return entries.stream().filter(entry -> entry.id == id).findFirst();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void explain(Entry entry) {
+        try {
+            List<String> plan = jdbcTemplate.queryForList(EXPLAIN_PREFIX + entry.sql, entry.params, String.class);
+            entry.plan = String.join("\n", plan);
+        } catch (DataAccessException ex) {
+            log.warn("Не удалось снять план медленного запроса {}: {}", entry.query, ex.getMostSpecificCause().getMessage());
+        }
+    }
+
+    private static boolean isExplainable(String sql) {
+        return READ_STATEMENT.matcher(sql).find() && !WRITE_STATEMENT.matcher(sql).find();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static SqlParameterSource toParameterSource(Object params) {
+        if (params instanceof SqlParameterSource source) {
+            return source;
+        }
+        return new MapSqlParameterSource(params != null ? (Map<String, ?>) params : Map.of());
+    }
+
+    /**
+     * Строки заменяются длиной, массивы — признаком массива. Числа и логические значения (лимиты, смещения, id
+     * справочников) остаются как есть, по ним видно, от чего зависит план
+     */
+    static Map<String, String> redact(SqlParameterSource params) {
+        Map<String, String> redacted = new LinkedHashMap<>();
+        String[] names = params.getParameterNames();
+        if (names == null) {
+            return redacted;
+        }
+        for (String name : names) {
+            Object value = params.getValue(name);
+            if (value == null || value instanceof Number || value instanceof Boolean) {
+                redacted.put(name, String.valueOf(value));
+            } else if (value instanceof CharSequence text) {
+                redacted.put(name, "<text:" + text.length() + ">");
+            } else {
+                redacted.put(name, "<" + value.getClass().getSimpleName() + ">");
+            }
+        }
+        return redacted;
+    }
+
+    private static class Entry {
+
+        private final long id;
+        private final String query;
+        private final String shape;
+        private final String sql;
+        private final SqlParameterSource params;
+        private final long durationNanos;
+        private final Instant recordedAt;
+        private volatile String plan;
+
+        Entry(long id, String query, String shape, String sql, SqlParameterSource params, long durationNanos,
+            Instant recordedAt) {
+            this.id = id;
+            this.query = query;
+            this.shape = shape;
+            this.sql = sql;
+            this.params = params;
+            this.durationNanos = durationNanos;
+            this.recordedAt = recordedAt;
+        }
+
+        SlowQueryDto toDto() {
+            return SlowQueryDto.builder()
+                .id(id)
+                .query(query)
+                .shape(shape)
+                .sql(sql)
+                .params(redact(params))
+                .durationMs(durationNanos / 1_000_000.0)
+                .recordedAt(recordedAt)
+                .plan(plan)
+                .build();
+        }
+
+    }
+
+}
@@ -0,0 +1,62 @@
+package org.annill.contractor.repository;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Перенос давно удаленных контрагентов из contractor в contractor_archive
+ *
+ * @author anailina
+ */
+@Repository
+public class ContractorArchiveRepository {
+
+    /**
+     * Переносит порцию удаленных контрагентов, на которых не ссылается ни одна дочерняя компания. Строки, занятые другой
+     * транзакцией, пропускаются до следующего запуска. Архив хранит каждую перенесенную копию, поэтому контрагент,
+     * заархивированный повторно после восстановления, не теряется
+     */
+    private static final String ARCHIVE_BATCH_SQL = """
+        WITH moved AS (
+            DELETE FROM contractor c
+            WHERE c.id IN (
+                SELECT a.id
+                FROM contractor a
+                WHERE a.is_active = false
+                  AND coalesce(a.modify_date, a.create_date) < :cutoff
+                  AND NOT EXISTS (SELECT 1 FROM contractor ch WHERE ch.parent_id = a.id)
+                LIMIT :batchSize
+                FOR UPDATE SKIP LOCKED
+            )
+            RETURNING c.*
+        ),
+        archived AS (
+            INSERT INTO contractor_archive
+            (id, parent_id, name, name_full, inn, ogrn, country, industry, org_form, create_date, modify_date,
+             create_user_id, modify_user_id)
+            SELECT id, parent_id, name, name_full, inn, ogrn, country, industry, org_form, create_date, modify_date,
+                   create_user_id, modify_user_id
+            FROM moved
+        )
+        SELECT count(*) FROM moved""";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public ContractorArchiveRepository(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * @return количество контрагентов, удаленных из contractor
+     */
+    @Transactional
+    public int archiveBatch(LocalDateTime cutoff, int batchSize) {
+        Integer moved = jdbcTemplate.queryForObject(ARCHIVE_BATCH_SQL, Map.of("cutoff", cutoff, "batchSize", batchSize),
+            Integer.class);
+        return moved != null ? moved : 0;
+    }
+
+}
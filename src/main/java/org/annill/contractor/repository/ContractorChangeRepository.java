@@ -0,0 +1,72 @@
+package org.annill.contractor.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import org.annill.contractor.dto.ContractorChangeDto;
+import org.annill.contractor.dto.ContractorChangesDto;
+import org.annill.contractor.dto.ContractorDto;
+import org.annill.contractor.filter.ChangeCursor;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Лента изменений контрагентов для инкрементальной синхронизации. Журнал contractor_change_log пишется теми же
+ * запросами, что и сами контрагенты в {@link ContractorRepository}
+ *
+ * @author anailina
+ */
+@Repository
+public class ContractorChangeRepository {
+
+    public static final int MAX_LIMIT = 10_000;
+
+    /**
+     * Записи упорядочены по номеру транзакции. Транзакции не младше горизонта текущего снимка еще могут зафиксироваться,
+     * поэтому отдаются только более старые: курсор не перескочит запись, которая станет видна позже
+     */
+    private static final String SELECT_CHANGES_SQL = """
+        SELECT c.id, c.parent_id, c.name, c.name_full, c.inn, c.ogrn, c.country, c.industry, c.org_form,
+               l.contractor_id, l.operation, l.change_date, l.tx_id::text, l.seq
+        FROM contractor_change_log l
+        LEFT JOIN contractor c ON c.id = l.contractor_id AND c.is_active = true
+        WHERE (l.tx_id, l.seq) > (CAST(:txId AS xid8), :seq)
+          AND l.tx_id < pg_snapshot_xmin(pg_current_snapshot())
+        ORDER BY l.tx_id, l.seq
+        LIMIT :limit""";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final ContractorRowMapper contractorRowMapper = new ContractorRowMapper();
+
+    public ContractorChangeRepository(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Изменения после курсора вместе с текущим состоянием контрагентов. Контрагент, измененный несколько раз, приходит
+     * в каждой записи в последнем состоянии, поэтому применять ленту можно повторно
+     *
+     * @param cursor курсор из предыдущего ответа или null для чтения с начала журнала
+     */
+    public ContractorChangesDto findChanges(String cursor, int limit) {
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("Размер порции ленты изменений должен быть от 1 до " + MAX_LIMIT);
+        }
+        ChangeCursor from = ChangeCursor.decode(cursor);
+
+        List<ContractorChangeDto> changes = new ArrayList<>();
+        AtomicReference<ChangeCursor> last = new AtomicReference<>(from);
+        jdbcTemplate.query(SELECT_CHANGES_SQL, Map.of("txId", from.getTxId(), "seq", from.getSeq(), "limit", limit),
+            (RowCallbackHandler) rs -> {
+                ContractorDto contractor = rs.getString(1) == null ? null : contractorRowMapper.mapRow(rs, changes.size());
+                changes.add(new ContractorChangeDto(rs.getString(10), rs.getString(11),
+                    rs.getTimestamp(12).toLocalDateTime(), contractor));
+                last.set(new ChangeCursor(rs.getString(13), rs.getLong(14)));
+            });
+
+        return new ContractorChangesDto(changes, last.get().encode());
+    }
+
+}
@@ -0,0 +1,275 @@
+package org.annill.contractor.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import org.annill.contractor.dto.ContractorDto;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.support.SqlArrayValue;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Таблица замыкания иерархии контрагентов: для каждого активного контрагента хранит всех его активных предков с
+ * расстоянием до них, включая строку на самого себя с глубиной 0. Путь через удаленного контрагента обрывается так же,
+ * как в рекурсивном обходе {@link ContractorRepository#findDescendants}
+ *
+ * @author anailina
+ */
+@Repository
+public class ContractorClosureRepository {
+
+    /**
+     * Структурные изменения выполняются по одному, иначе два одновременных переноса поддеревьев оставят лишние связи
+     */
+    private static final String LOCK_SQL = "SELECT pg_advisory_xact_lock(hashtext('contractor_closure'))";
+
+    /**
+     * Добавление новых листьев не мешает друг другу, но не должно пересекаться с переносом поддеревьев: перенос не
+     * увидит незафиксированный лист и оставит ему старых предков
+     */
+    private static final String SHARED_LOCK_SQL = "SELECT pg_advisory_xact_lock_shared(hashtext('contractor_closure'))";
+
+    private static final String SELECT_CURRENT_PARENTS_SQL = """
+        SELECT s.descendant_id AS id, p.ancestor_id AS parent_id
+        FROM contractor_closure s
+        LEFT JOIN contractor_closure p ON p.descendant_id = s.descendant_id AND p.depth = 1
+        WHERE s.ancestor_id = s.descendant_id AND s.descendant_id = ANY(:ids)""";
+
+    /**
+     * Новые контрагенты, у которых уже есть активные дочерние компании в таблице замыкания, — восстановленные после
+     * удаления. Их нельзя добавить как лист, дочерние компании нужно подвесить обратно
+     */
+    private static final String SELECT_PARENTS_WITH_CHILDREN_SQL = """
+        SELECT DISTINCT c.parent_id
+        FROM contractor c
+        JOIN contractor_closure s ON s.ancestor_id = c.id AND s.descendant_id = c.id
+        WHERE c.parent_id = ANY(:ids) AND c.is_active = true AND c.id <> c.parent_id""";
+
+    /**
+     * Добавляет порцию новых листьев одним запросом: строку на самого себя и связи со всеми предками головной компании
+     */
+    private static final String INSERT_LEAVES_SQL = """
+        INSERT INTO contractor_closure (ancestor_id, descendant_id, depth)
+        SELECT n.id, n.id, 0
+        FROM unnest(:ids) AS n(id)
+        UNION ALL
+        SELECT sup.ancestor_id, n.id, sup.depth + 1
+        FROM unnest(:ids, :parentIds) AS n(id, parent_id)
+        JOIN contractor_closure sup ON sup.descendant_id = n.parent_id
+        WHERE n.parent_id <> n.id""";
+
+    private static final String EXISTS_SQL = """
+        SELECT EXISTS (
+            SELECT 1 FROM contractor_closure WHERE ancestor_id = :ancestorId AND descendant_id = :descendantId
+        )""";
+
+    private static final String IS_DESCENDANT_SQL = """
+        SELECT EXISTS (
+            SELECT 1 FROM contractor_closure WHERE ancestor_id = :ancestorId AND descendant_id = :descendantId AND depth > 0
+        )""";
+
+    private static final String INSERT_SELF_SQL =
+        "INSERT INTO contractor_closure (ancestor_id, descendant_id, depth) VALUES (:id, :id, 0)";
+
+    /**
+     * Возвращает под восстановленного контрагента активные дочерние компании, которые остались без головной компании
+     * после его удаления
+     */
+    private static final String ATTACH_CHILDREN_SQL = """
+        INSERT INTO contractor_closure (ancestor_id, descendant_id, depth)
+        SELECT :id, sub.descendant_id, sub.depth + 1
+        FROM contractor c
+        JOIN contractor_closure sub ON sub.ancestor_id = c.id
+        WHERE c.parent_id = :id AND c.is_active = true AND c.id <> :id
+          AND NOT EXISTS (SELECT 1 FROM contractor_closure p WHERE p.descendant_id = c.id AND p.depth = 1)""";
+
+    /**
+     * Отрывает поддерево контрагента от всех его предков
+     */
+    private static final String DETACH_SQL = """
+        DELETE FROM contractor_closure d
+        USING contractor_closure sub, contractor_closure sup
+        WHERE sub.ancestor_id = :id AND sup.descendant_id = :id AND sup.ancestor_id <> :id
+          AND d.ancestor_id = sup.ancestor_id AND d.descendant_id = sub.descendant_id""";
+
+    /**
+     * Подвешивает поддерево контрагента под новую головную компанию и всех ее предков
+     */
+    private static final String ATTACH_SQL = """
+        INSERT INTO contractor_closure (ancestor_id, descendant_id, depth)
+        SELECT sup.ancestor_id, sub.descendant_id, sup.depth + sub.depth + 1
+        FROM contractor_closure sup, contractor_closure sub
+        WHERE sup.descendant_id = :parentId AND sub.ancestor_id = :id""";
+
+    /**
+     * Удаляет контрагента: связи всех его предков и его самого со всем поддеревом. Связи внутри поддеревьев дочерних
+     * компаний остаются, дочерние компании становятся головными
+     */
+    private static final String REMOVE_SQL = """
+        DELETE FROM contractor_closure d
+        USING contractor_closure sub, contractor_closure sup
+        WHERE sub.ancestor_id = :id AND sup.descendant_id = :id
+          AND d.ancestor_id = sup.ancestor_id AND d.descendant_id = sub.descendant_id""";
+
+    private static final String CLEAR_SQL = "DELETE FROM contractor_closure";
+
+    private static final String REBUILD_SQL = """
+        INSERT INTO contractor_closure (ancestor_id, descendant_id, depth)
+        WITH RECURSIVE tree AS (
+            SELECT id AS ancestor_id, id AS descendant_id, 0 AS depth, ARRAY[id] AS path
+            FROM contractor
+            WHERE is_active = true
+            UNION ALL
+            SELECT t.ancestor_id, c.id, t.depth + 1, t.path || c.id
+            FROM tree t
+            JOIN contractor c ON c.parent_id = t.descendant_id
+            WHERE c.is_active = true AND c.id <> ALL(t.path)
+        )
+        SELECT ancestor_id, descendant_id, depth
+        FROM tree
+        ON CONFLICT DO NOTHING""";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public ContractorClosureRepository(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Приводит таблицу замыкания в соответствие с сохраненными контрагентами. Текущая головная компания каждого
+     * контрагента читается одним запросом. Новые контрагенты без дочерних компаний добавляются несколькими запросами на
+     * всю порцию, по одному на уровень вложенности внутри порции. По одному и под исключительной блокировкой
+     * перестраиваются только те, у кого сменилась головная компания, и восстановленные после удаления
+     *
+     * @throws IllegalArgumentException если головная компания входит в группу самого контрагента
+     */
+    @Transactional
+    public void sync(List<ContractorDto> contractors) {
+        Map<String, ContractorDto> byId = new LinkedHashMap<>();
+        contractors.forEach(contractor -> byId.put(contractor.getId(), contractor));
+
+        Map<String, String> currentParents = new HashMap<>();
+        jdbcTemplate.query(SELECT_CURRENT_PARENTS_SQL, Map.of("ids", array(byId.keySet())),
+            (RowCallbackHandler) rs -> currentParents.put(rs.getString("id"), rs.getString("parent_id")));
+
+        List<ContractorDto> moved = new ArrayList<>();
+        Map<String, ContractorDto> leaves = new LinkedHashMap<>();
+        byId.values().forEach(contractor -> {
+            if (!currentParents.containsKey(contractor.getId())) {
+                leaves.put(contractor.getId(), contractor);
+            } else if (!Objects.equals(currentParents.get(contractor.getId()), contractor.getParentId())) {
+                moved.add(contractor);
+            }
+        });
+        if (!leaves.isEmpty()) {
+            jdbcTemplate.queryForList(SELECT_PARENTS_WITH_CHILDREN_SQL, Map.of("ids", array(leaves.keySet())), String.class)
+                .forEach(id -> moved.add(leaves.remove(id)));
+        }
+        if (leaves.isEmpty() && moved.isEmpty()) {
+            return;
+        }
+
+        jdbcTemplate.getJdbcTemplate().execute(moved.isEmpty() ? SHARED_LOCK_SQL : LOCK_SQL);
+        insertLeaves(leaves);
+        moved.forEach(contractor -> move(contractor.getId(), contractor.getParentId()));
+    }
+
+    @Transactional
+    public void remove(String id) {
+        jdbcTemplate.getJdbcTemplate().execute(LOCK_SQL);
+        jdbcTemplate.update(REMOVE_SQL, Map.of("id", id));
+    }
+
+    /**
+     * Проверка одним обращением к первичному ключу
+     */
+    public boolean isDescendant(String id, String ancestorId) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(IS_DESCENDANT_SQL,
+            Map.of("ancestorId", ancestorId, "descendantId", id), Boolean.class));
+    }
+
+    /**
+     * Строит таблицу замыкания заново по contractor.parent_id
+     *
+     * @return количество связей в таблице
+     */
+    @Transactional
+    public int rebuild() {
+        jdbcTemplate.getJdbcTemplate().execute(LOCK_SQL);
+        jdbcTemplate.getJdbcTemplate().update(CLEAR_SQL);
+        return jdbcTemplate.getJdbcTemplate().update(REBUILD_SQL);
+    }
+
+    private void move(String id, String parentId) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("id", id);
+        params.put("parentId", parentId);
+
+        if (exists(id, id)) {
+            jdbcTemplate.update(DETACH_SQL, params);
+        } else {
+            jdbcTemplate.update(INSERT_SELF_SQL, params);
+            jdbcTemplate.update(ATTACH_CHILDREN_SQL, params);
+        }
+
+        if (parentId == null || parentId.equals(id)) {
+            return;
+        }
+        if (exists(id, parentId)) {
+            throw cycle(id, parentId);
+        }
+        jdbcTemplate.update(ATTACH_SQL, params);
+    }
+
+    /**
+     * Головная компания листа должна попасть в таблицу раньше него, поэтому листья добавляются по уровням: сначала те,
+     * чья головная компания не входит в порцию, затем их дочерние компании и так далее
+     */
+    private void insertLeaves(Map<String, ContractorDto> leaves) {
+        Set<String> inserted = new HashSet<>();
+        List<ContractorDto> pending = new ArrayList<>(leaves.values());
+        while (!pending.isEmpty()) {
+            List<ContractorDto> level = pending.stream()
+                .filter(leaf -> !isPendingParent(leaf, leaves, inserted))
+                .toList();
+            if (level.isEmpty()) {
+                ContractorDto leaf = pending.getFirst();
+                throw cycle(leaf.getId(), leaf.getParentId());
+            }
+            jdbcTemplate.update(INSERT_LEAVES_SQL, Map.of(
+                "ids", array(level.stream().map(ContractorDto::getId).toList()),
+                "parentIds", array(level.stream().map(ContractorDto::getParentId).toList())));
+            level.forEach(leaf -> inserted.add(leaf.getId()));
+            pending.removeAll(level);
+        }
+    }
+
+    private static boolean isPendingParent(ContractorDto leaf, Map<String, ContractorDto> leaves, Set<String> inserted) {
+        String parentId = leaf.getParentId();
+        return parentId != null && !parentId.equals(leaf.getId()) && leaves.containsKey(parentId)
+            && !inserted.contains(parentId);
+    }
+
+    private static IllegalArgumentException cycle(String id, String parentId) {
+        return new IllegalArgumentException("Контрагент " + id + " не может быть подчинен " + parentId
+            + ": головная компания входит в его группу");
+    }
+
+    private static SqlArrayValue array(Collection<String> values) {
+        return new SqlArrayValue("varchar", values.toArray());
+    }
+
+    private boolean exists(String ancestorId, String descendantId) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(EXISTS_SQL,
+            Map.of("ancestorId", ancestorId, "descendantId", descendantId), Boolean.class));
+    }
+
+}
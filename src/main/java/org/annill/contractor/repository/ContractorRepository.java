@@ -1,18 +1,46 @@
 package org.annill.contractor.repository;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.function.Consumer;
 import javax.persistence.EntityNotFoundException;
 import lombok.AllArgsConstructor;
-import org.annill.contractor.converter.ContractorConverter;
+import org.annill.contractor.cache.CacheInvalidation;
+import org.annill.contractor.cache.ContractorCache;
+import org.annill.contractor.cache.ContractorSearchCache;
+import org.annill.contractor.cache.ReferenceData;
+import org.annill.contractor.cache.ReferenceDataCache;
+import org.annill.contractor.cache.SingleFlight;
+import org.annill.contractor.config.ContractorProperties;
 import org.annill.contractor.dto.ContractorDto;
-import org.annill.contractor.entity.Contractor;
+import org.annill.contractor.dto.ContractorFacetsDto;
+import org.annill.contractor.dto.ContractorNodeDto;
+import org.annill.contractor.dto.ContractorSearchResultDto;
+import org.annill.contractor.dto.CountMode;
+import org.annill.contractor.dto.CountryDto;
+import org.annill.contractor.dto.FacetDto;
+import org.annill.contractor.entity.VersionedContractor;
 import org.annill.contractor.filter.ContractorSearch;
+import org.annill.contractor.filter.PageToken;
+import org.annill.contractor.monitoring.QueryMetrics;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.jdbc.support.SqlArrayValue;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -25,146 +53,584 @@ import org.springframework.transaction.annotation.Transactional;
 @AllArgsConstructor
 public class ContractorRepository {
 
-    private static final String COUNT_BY_ID_SQL =
-        "SELECT count(*) FROM contractor WHERE id = :id";
-
-    private static final String SELECT_BY_ID_SQL =
-        "SELECT * FROM contractor WHERE is_active = true AND id = :id";
-
-    private static final String LOGICAL_DELETE_SQL =
-        "UPDATE contractor SET is_active = false, modify_date = now() WHERE id = :id";
-
-    private static final String UPDATE_CONTRACTOR_SQL = """
-        UPDATE contractor
-        SET parent_id = :parent_id,
-            name = :name,
-            name_full = :name_full,
-            inn = :inn,
-            ogrn = :ogrn,
-            country = :country,
-            industry = :industry,
-            org_form = :orgForm,
-            modify_date = now(),
-            is_active = true
-        WHERE id = :id""";
+    private static final String FIND_BY_ID = "contractor.find_by_id";
+
+    private static final String SEARCH = "contractor.search";
+
+    private static final String SELECT_BY_ID_SQL = "SELECT " + ContractorRowMapper.COLUMNS
+        + ", version FROM contractor WHERE is_active = true AND id = :id";
+
+    private static final String SELECT_VERSION_BY_ID_SQL =
+        "SELECT version FROM contractor WHERE is_active = true AND id = :id";
+
+    private static final String SELECT_BY_INN_SQL =
+        "SELECT " + ContractorRowMapper.COLUMNS + " FROM contractor WHERE is_active = true AND inn = :inn";
+
+    private static final String SELECT_BY_OGRN_SQL =
+        "SELECT " + ContractorRowMapper.COLUMNS + " FROM contractor WHERE is_active = true AND ogrn = :ogrn";
+
+    private static final String SELECT_BY_INNS_SQL =
+        "SELECT " + ContractorRowMapper.COLUMNS + " FROM contractor WHERE is_active = true AND inn = ANY(:keys)";
+
+    private static final String SELECT_BY_OGRNS_SQL =
+        "SELECT " + ContractorRowMapper.COLUMNS + " FROM contractor WHERE is_active = true AND ogrn = ANY(:keys)";
+
+    private static final int MAX_LOOKUP_KEYS = 1000;
+
+    private static final ObjectMapper PLAN_READER = new ObjectMapper();
+
+    /**
+     * Все записи в contractor сопровождаются записью в contractor_change_log тем же запросом, из которой строится
+     * лента изменений {@link ContractorChangeRepository}
+     */
+    private static final String LOGICAL_DELETE_SQL = """
+        WITH deleted AS (
+            UPDATE contractor SET is_active = false, modify_date = now(), version = version + 1
+            WHERE id = :id AND is_active = true
+            RETURNING id
+        )
+        INSERT INTO contractor_change_log (contractor_id, operation)
+        SELECT id, 'DELETE' FROM deleted""";
+
+    /**
+     * Обновление при совпадении версии, которую клиент прочитал вместе с записью. Пустой результат означает, что запись
+     * успели изменить, удалить или ее нет
+     */
+    private static final String UPDATE_IF_VERSION_SQL = """
+        WITH saved AS (
+            UPDATE contractor
+            SET parent_id = :parent_id,
+                name = :name,
+                name_full = :name_full,
+                inn = :inn,
+                ogrn = :ogrn,
+                country = :country,
+                industry = :industry,
+                org_form = :orgForm,
+                modify_date = now(),
+                version = version + 1
+            WHERE id = :id AND is_active = true AND version = :version
+            RETURNING id, version
+        ), logged AS (
+            INSERT INTO contractor_change_log (contractor_id, operation)
+            SELECT id, 'UPDATE' FROM saved
+        )
+        SELECT version FROM saved""";
+
+    /**
+     * xmax = 0 у строки, только что вставленной этой командой, и ненулевой после ветки ON CONFLICT DO UPDATE
+     */
+    private static final String UPSERT_SAVED_CTE = """
+        WITH saved AS (
+            INSERT INTO contractor
+            (id, parent_id, name, name_full, inn, ogrn, country, industry, org_form, create_date, is_active)
+            VALUES
+            (:id, :parent_id, :name, :name_full, :inn, :ogrn, :country, :industry, :orgForm, now(), true)
+            ON CONFLICT (id) DO UPDATE
+            SET parent_id = EXCLUDED.parent_id,
+                name = EXCLUDED.name,
+                name_full = EXCLUDED.name_full,
+                inn = EXCLUDED.inn,
+                ogrn = EXCLUDED.ogrn,
+                country = EXCLUDED.country,
+                industry = EXCLUDED.industry,
+                org_form = EXCLUDED.org_form,
+                modify_date = now(),
+                is_active = true,
+                version = contractor.version + 1
+            RETURNING id, version, xmax = 0 AS inserted
+        )
+        """;
 
-    private static final String INSERT_CONTRACTOR_SQL = """
+    private static final String UPSERT_CONTRACTOR_SQL = UPSERT_SAVED_CTE + """
+        INSERT INTO contractor_change_log (contractor_id, operation)
+        SELECT id, CASE WHEN inserted THEN 'INSERT' ELSE 'UPDATE' END FROM saved""";
+
+    /**
+     * Вставка пакета без журнала: драйвер склеивает в один многострочный запрос (reWriteBatchedInserts) только
+     * команды вида INSERT ... VALUES, а запрос с CTE отправлялся бы по одному на строку. Журнал пакета пишется
+     * отдельно запросом {@link #LOG_BATCH_SQL}
+     */
+    private static final String UPSERT_BATCH_SQL = """
         INSERT INTO contractor
         (id, parent_id, name, name_full, inn, ogrn, country, industry, org_form, create_date, is_active)
         VALUES
-        (:id, :parent_id, :name, :name_full, :inn, :ogrn, :country, :industry, :orgForm, now(), true)""";
+        (:id, :parent_id, :name, :name_full, :inn, :ogrn, :country, :industry, :orgForm, now(), true)
+        ON CONFLICT (id) DO UPDATE
+        SET parent_id = EXCLUDED.parent_id,
+            name = EXCLUDED.name,
+            name_full = EXCLUDED.name_full,
+            inn = EXCLUDED.inn,
+            ogrn = EXCLUDED.ogrn,
+            country = EXCLUDED.country,
+            industry = EXCLUDED.industry,
+            org_form = EXCLUDED.org_form,
+            modify_date = now(),
+            is_active = true,
+            version = contractor.version + 1""";
+
+    /**
+     * Журнал пакета одним запросом по id пакета в той же транзакции и в порядке пакета. Версия 1 бывает только у
+     * строки, вставленной заново, любое обновление ее увеличивает
+     */
+    private static final String LOG_BATCH_SQL = """
+        INSERT INTO contractor_change_log (contractor_id, operation)
+        SELECT c.id, CASE WHEN c.version = 1 THEN 'INSERT' ELSE 'UPDATE' END
+        FROM unnest(:ids) WITH ORDINALITY AS b(id, position)
+        JOIN contractor c ON c.id = b.id
+        ORDER BY b.position""";
+
+    /**
+     * То же, что {@link #UPSERT_CONTRACTOR_SQL}, но с новой версией в результате
+     */
+    private static final String SAVE_CONTRACTOR_SQL = UPSERT_SAVED_CTE + """
+        , logged AS (
+            INSERT INTO contractor_change_log (contractor_id, operation)
+            SELECT id, CASE WHEN inserted THEN 'INSERT' ELSE 'UPDATE' END FROM saved
+        )
+        SELECT version FROM saved""";
 
-    private static final String SEARCH_BASE_SQL = """
-        SELECT c.*
-        FROM contractor c
-        LEFT JOIN country co ON c.country = co.id AND co.is_active = true
-        LEFT JOIN industry ind ON c.industry = ind.id AND ind.is_active = true
-        LEFT JOIN org_form o ON c.org_form = o.id AND o.is_active = true
-        WHERE c.is_active = true""";
+    /**
+     * Обход вниз по parent_id от заданного контрагента. Путь обхода защищает от циклов, глубина ограничена :maxDepth
+     */
+    private static final String SELECT_DESCENDANTS_SQL = """
+        WITH RECURSIVE tree AS (
+            SELECT c.id, c.parent_id, c.name, c.name_full, c.inn, c.ogrn, c.country, c.industry, c.org_form,
+                   0 AS depth, ARRAY[c.id] AS path
+            FROM contractor c
+            WHERE c.id = :id AND c.is_active = true
+            UNION ALL
+            SELECT c.id, c.parent_id, c.name, c.name_full, c.inn, c.ogrn, c.country, c.industry, c.org_form,
+                   t.depth + 1, t.path || c.id
+            FROM tree t
+            JOIN contractor c ON c.parent_id = t.id
+            WHERE c.is_active = true AND t.depth < :maxDepth AND c.id <> ALL(t.path)
+        )
+        SELECT id, parent_id, name, name_full, inn, ogrn, country, industry, org_form, depth
+        FROM tree
+        ORDER BY depth, name, id""";
+
+    /**
+     * Обход вверх по parent_id от заданного контрагента до головной компании
+     */
+    private static final String SELECT_ANCESTORS_SQL = """
+        WITH RECURSIVE tree AS (
+            SELECT c.id, c.parent_id, c.name, c.name_full, c.inn, c.ogrn, c.country, c.industry, c.org_form,
+                   0 AS depth, ARRAY[c.id] AS path
+            FROM contractor c
+            WHERE c.id = :id AND c.is_active = true
+            UNION ALL
+            SELECT c.id, c.parent_id, c.name, c.name_full, c.inn, c.ogrn, c.country, c.industry, c.org_form,
+                   t.depth + 1, t.path || c.id
+            FROM tree t
+            JOIN contractor c ON c.id = t.parent_id
+            WHERE c.is_active = true AND t.depth < :maxDepth AND c.id <> ALL(t.path)
+        )
+        SELECT id, parent_id, name, name_full, inn, ogrn, country, industry, org_form, depth
+        FROM tree
+        ORDER BY depth""";
+
+    private static final String EXPORT_SQL =
+        "SELECT " + ContractorRowMapper.COLUMNS + " FROM contractor WHERE is_active = true";
 
-    private final ContractorConverter contractorConverter;
     private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final ContractorProperties properties;
+    private final ContractorSearchQueryBuilder searchQueryBuilder;
+    private final ContractorCache contractorCache;
+    private final ContractorSearchCache searchCache;
+    private final SingleFlight singleFlight;
+    private final ContractorClosureRepository closureRepository;
+    private final ReferenceDataCache referenceDataCache;
+    private final QueryMetrics queryMetrics;
+
+    private final RowMapper<ContractorDto> contractorRowMapper = new ContractorRowMapper();
 
-    private final RowMapper<Contractor> contractorRowMapper = (rs, rowNum) ->
-        Contractor.builder()
-            .id(rs.getString("id"))
-            .parentId(rs.getString("parent_id"))
-            .name(rs.getString("name"))
-            .nameFull(rs.getString("name_full"))
-            .inn(rs.getString("inn"))
-            .ogrn(rs.getString("ogrn"))
-            .country(rs.getString("country"))
-            .industry(rs.getInt("industry"))
-            .orgForm(rs.getInt("org_form"))
-            .isActive(rs.getBoolean("is_active"))
-            .build();
+    private final RowMapper<VersionedContractor> versionedContractorRowMapper = (rs, rowNum) ->
+        new VersionedContractor(contractorRowMapper.mapRow(rs, rowNum), rs.getLong(10));
 
+    private final RowMapper<ContractorNodeDto> contractorNodeRowMapper = (rs, rowNum) ->
+        new ContractorNodeDto(rs.getInt(10), contractorRowMapper.mapRow(rs, rowNum));
+
+    /**
+     * Создает контрагента или перезаписывает его без проверки версии одним запросом
+     *
+     * @return новая версия контрагента
+     */
     @Transactional
-    public void saveOrUpdate(ContractorDto contractorDto) {
+    public long saveOrUpdate(ContractorDto contractorDto) {
         if (contractorDto == null || contractorDto.getId() == null) {
             throw new EntityNotFoundException();
         }
 
-        Integer count = jdbcTemplate.queryForObject(COUNT_BY_ID_SQL,
-            Map.of("id", contractorDto.getId()), Integer.class);
+        Long version = queryMetrics.single("contractor.save", SAVE_CONTRACTOR_SQL, toParams(contractorDto),
+            (sql, args) -> jdbcTemplate.queryForObject(sql, args, Long.class));
+        closureRepository.sync(List.of(contractorDto));
+        invalidateAfterCommit(List.of(contractorDto.getId()));
+        return version;
+    }
 
-        Map<String, Object> params = new HashMap<>();
-        params.put("id", contractorDto.getId());
-        params.put("parent_id", contractorDto.getParentId());
-        params.put("name", contractorDto.getName());
-        params.put("name_full", contractorDto.getNameFull());
-        params.put("inn", contractorDto.getInn());
-        params.put("ogrn", contractorDto.getOgrn());
-        params.put("country", contractorDto.getCountry());
-        params.put("industry", contractorDto.getIndustry());
-        params.put("orgForm", contractorDto.getOrgForm());
+    /**
+     * Обновляет активного контрагента, только если его версия не изменилась с момента чтения
+     *
+     * @param expectedVersion версия из ETag, полученного клиентом
+     * @return новая версия контрагента
+     * @throws OptimisticLockingFailureException если контрагента успели изменить или удалить
+     */
+    @Transactional
+    public long update(ContractorDto contractorDto, long expectedVersion) {
+        if (contractorDto == null || contractorDto.getId() == null) {
+            throw new EntityNotFoundException();
+        }
 
-        if (count != null && count > 0) {
-            jdbcTemplate.update(UPDATE_CONTRACTOR_SQL, params);
-        } else {
-            jdbcTemplate.update(INSERT_CONTRACTOR_SQL, params);
+        Map<String, Object> params = toParams(contractorDto);
+        params.put("version", expectedVersion);
+        List<Long> versions = queryMetrics.list("contractor.update_if_version", UPDATE_IF_VERSION_SQL, params,
+            (sql, args) -> jdbcTemplate.queryForList(sql, args, Long.class));
+        if (versions.isEmpty()) {
+            throw new OptimisticLockingFailureException("Контрагент " + contractorDto.getId()
+                + " изменен или удален после чтения версии " + expectedVersion);
         }
+        closureRepository.sync(List.of(contractorDto));
+        invalidateAfterCommit(List.of(contractorDto.getId()));
+        return versions.getFirst();
+    }
+
+    /**
+     * Сохраняет пакет контрагентов одним пакетным запросом INSERT ... ON CONFLICT. Пакет сохраняется целиком или не
+     * сохраняется вовсе
+     */
+    @Transactional
+    public void upsertAll(List<ContractorDto> contractors) {
+        SqlParameterSource[] batch = contractors.stream()
+            .map(contractor -> new MapSqlParameterSource(toParams(contractor)))
+            .toArray(SqlParameterSource[]::new);
+        queryMetrics.record("contractor.upsert_batch", QueryMetrics.NO_SHAPE, UPSERT_BATCH_SQL, Map.of(),
+            (sql, args) -> jdbcTemplate.batchUpdate(sql, batch), counts -> counts.length);
+        List<String> ids = contractors.stream().map(ContractorDto::getId).distinct().toList();
+        queryMetrics.update("contractor.log_batch", LOG_BATCH_SQL,
+            Map.of("ids", new SqlArrayValue("varchar", ids.toArray())), jdbcTemplate::update);
+        closureRepository.sync(contractors);
+        invalidateAfterCommit(ids);
     }
 
+    @Transactional
+    public void upsert(ContractorDto contractorDto) {
+        queryMetrics.update("contractor.upsert", UPSERT_CONTRACTOR_SQL, toParams(contractorDto), jdbcTemplate::update);
+        closureRepository.sync(List.of(contractorDto));
+        invalidateAfterCommit(List.of(contractorDto.getId()));
+    }
+
+    /**
+     * Поиск активного контрагента по id через {@link ContractorCache}. Одновременные промахи по одному id выполняют
+     * один запрос через {@link SingleFlight}
+     */
     public ContractorDto findById(String id) {
-        Contractor contractor = jdbcTemplate.queryForObject(
-            SELECT_BY_ID_SQL,
-            Map.of("id", id),
-            contractorRowMapper
-        );
-        return contractorConverter.toDto(contractor);
+        return findVersionedById(id).getContractor();
+    }
+
+    public VersionedContractor findVersionedById(String id) {
+        return contractorCache.get(id, () -> singleFlight.execute(FIND_BY_ID, id, () -> queryMetrics.single(FIND_BY_ID,
+            SELECT_BY_ID_SQL, Map.of("id", id),
+            (sql, args) -> jdbcTemplate.queryForObject(sql, args, versionedContractorRowMapper))));
+    }
+
+    /**
+     * Версия активного контрагента для проверки If-None-Match: из кэша, а при промахе — запросом одной колонки без
+     * чтения самой записи
+     */
+    public long findVersion(String id) {
+        return contractorCache.getVersionIfPresent(id).orElseGet(() -> queryMetrics.single("contractor.find_version",
+            SELECT_VERSION_BY_ID_SQL, Map.of("id", id), (sql, args) -> jdbcTemplate.queryForObject(sql, args, Long.class)));
+    }
+
+    /**
+     * ИНН не уникален: у обособленных подразделений он общий с головной организацией, поэтому возвращаются все
+     * активные контрагенты с этим ИНН
+     *
+     * @throws EmptyResultDataAccessException если таких контрагентов нет
+     */
+    public List<ContractorDto> findByInn(String inn) {
+        return findByNumber("contractor.find_by_inn", SELECT_BY_INN_SQL, "inn", inn);
+    }
+
+    /**
+     * @throws EmptyResultDataAccessException если активных контрагентов с этим ОГРН нет
+     */
+    public List<ContractorDto> findByOgrn(String ogrn) {
+        return findByNumber("contractor.find_by_ogrn", SELECT_BY_OGRN_SQL, "ogrn", ogrn);
+    }
+
+    public List<ContractorDto> findByInns(List<String> inns) {
+        return findByKeys("contractor.find_by_inns", SELECT_BY_INNS_SQL, inns);
+    }
+
+    public List<ContractorDto> findByOgrns(List<String> ogrns) {
+        return findByKeys("contractor.find_by_ogrns", SELECT_BY_OGRNS_SQL, ogrns);
     }
 
+    /**
+     * Наличие активного контрагента проверяется по числу обновленных строк, а не через кэш чтения: закэшированное
+     * отсутствие или устаревшая запись не должны влиять на ответ
+     *
+     * @throws EntityNotFoundException если активного контрагента с таким id нет
+     */
     @Transactional
     public void logicalDelete(String id) {
-        findById(id);
-        jdbcTemplate.update(LOGICAL_DELETE_SQL, Map.of("id", id));
+        int deleted = queryMetrics.update("contractor.logical_delete", LOGICAL_DELETE_SQL, Map.of("id", id),
+            jdbcTemplate::update);
+        if (deleted == 0) {
+            throw new EntityNotFoundException("Контрагент с ID " + id + " не найден");
+        }
+        closureRepository.remove(id);
+        invalidateAfterCommit(List.of(id));
     }
 
+    /**
+     * Контрагент и все его активные дочерние компании до глубины {@code depth} одним запросом
+     *
+     * @param depth глубина обхода; без нее обходится вся группа
+     * @return плоский список, первым идет сам контрагент с глубиной 0
+     * @throws IllegalArgumentException если глубина не задана, а группа глубже {@code contractor.hierarchy.max-depth}
+     */
+    public List<ContractorNodeDto> findDescendants(String id, Integer depth) {
+        return findHierarchy("contractor.find_descendants", SELECT_DESCENDANTS_SQL, id, depth);
+    }
+
+    /**
+     * Контрагент и цепочка его головных компаний до глубины {@code depth} одним запросом
+     *
+     * @param depth глубина обхода; без нее обходится вся цепочка
+     * @return плоский список от самого контрагента с глубиной 0 до верхней головной компании
+     * @throws IllegalArgumentException если глубина не задана, а цепочка длиннее {@code contractor.hierarchy.max-depth}
+     */
+    public List<ContractorNodeDto> findAncestors(String id, Integer depth) {
+        return findHierarchy("contractor.find_ancestors", SELECT_ANCESTORS_SQL, id, depth);
+    }
+
+    /**
+     * Входит ли контрагент {@code id} в группу {@code ancestorId} на любом уровне. Отвечает по таблице замыкания без
+     * обхода иерархии
+     */
+    public boolean isDescendant(String id, String ancestorId) {
+        return closureRepository.isDescendant(id, ancestorId);
+    }
+
+    /**
+     * Поиск через {@link ContractorSearchCache}. Фильтр сначала приводится к каноническому виду, поэтому запросы,
+     * различающиеся только пробелами и регистром, обслуживаются одной записью кэша, а при промахе одновременные
+     * запросы выполняют один поиск через {@link SingleFlight}
+     */
     public List<ContractorDto> search(ContractorSearch contractorSearch) {
-        StringBuilder sql = new StringBuilder(SEARCH_BASE_SQL);
-        Map<String, Object> params = new HashMap<>();
+        ContractorSearch normalized = contractorSearch.normalize();
+        return searchCache.get(normalized, () -> singleFlight.execute(SEARCH, normalized, () -> loadSearch(normalized)));
+    }
 
-        if (StringUtils.isNotBlank(contractorSearch.getId())) {
-            sql.append(" AND c.id = :contractorId");
-            params.put("contractorId", contractorSearch.getId());
+    /**
+     * Страница поиска и, по запросу, общее количество и разбивка по справочникам. Страница берется через
+     * {@link #search} и кэш поиска, количество и разбивка считаются отдельным запросом: разбивка вместе с количеством
+     * одним запросом с GROUPING SETS, только количество — через count(*). Названия значений берутся из кэша
+     * справочников.
+     * <p>
+     * Если нужно только количество и точность не требуется, сначала берется оценка планировщика. Точный подсчет
+     * выполняется, только если оценка меньше {@code contractor.search.exact-count-threshold}
+     */
+    @Transactional(readOnly = true)
+    public ContractorSearchResultDto searchPage(ContractorSearch contractorSearch, boolean withTotal,
+        boolean withFacets, boolean exactTotal) {
+        ContractorSearch normalized = contractorSearch.normalize();
+        List<ContractorDto> items = search(normalized);
+        ContractorSearchResultDto.ContractorSearchResultDtoBuilder result = ContractorSearchResultDto.builder()
+            .items(items)
+            .nextPageToken(PageToken.next(items, normalized.getLimit()));
+        if (!withTotal && !withFacets) {
+            return result.build();
         }
 
-        if (StringUtils.isNotBlank(contractorSearch.getParentId())) {
-            sql.append(" AND c.parent_id = :parentId");
-            params.put("parentId", contractorSearch.getParentId());
+        if (withTotal && !withFacets && !exactTotal) {
+            long estimate = estimateCount(normalized);
+            if (estimate >= properties.getSearch().getExactCountThreshold()) {
+                return result.total(estimate).countMode(CountMode.ESTIMATED).build();
+            }
         }
 
-        if (StringUtils.isNotBlank(contractorSearch.getSearchFilter())) {
-            sql.append(" AND (c.name ILIKE :searchText OR c.name_full ILIKE :searchText " +
-                "OR c.inn ILIKE :searchText OR c.ogrn ILIKE :searchText)");
-            params.put("searchText", "%" + contractorSearch.getSearchFilter() + "%");
+        ReferenceData referenceData = referenceDataCache.get();
+        List<FacetDto> countries = new ArrayList<>();
+        List<FacetDto> industries = new ArrayList<>();
+        List<FacetDto> orgForms = new ArrayList<>();
+        long[] total = new long[1];
+        RowCallbackHandler aggregateHandler = rs -> {
+            long count = rs.getLong("cnt");
+            if (rs.getInt("no_country") == 0) {
+                String id = rs.getString("country");
+                CountryDto country = id != null ? referenceData.getCountriesById().get(id) : null;
+                countries.add(facet(id, country != null ? country.getName() : null, count));
+            } else if (rs.getInt("no_industry") == 0) {
+                Integer id = getInteger(rs, "industry");
+                industries.add(facet(id, referenceData.getIndustries(), count));
+            } else if (rs.getInt("no_org_form") == 0) {
+                Integer id = getInteger(rs, "org_form");
+                orgForms.add(facet(id, referenceData.getOrgForms(), count));
+            } else {
+                total[0] = count;
+            }
+        };
+        String queryName = withFacets ? "contractor.search_facets" : "contractor.search_total";
+        searchQueryBuilder.buildAggregates(normalized, withFacets).ifPresent(query ->
+            queryMetrics.record(queryName, query.getShape(), query.getSql(), query.getParams(), (sql, args) -> {
+                jdbcTemplate.query(sql, args, aggregateHandler);
+                return countries.size() + industries.size() + orgForms.size() + 1;
+            }, Integer::intValue));
+
+        if (withTotal) {
+            result.total(total[0]).countMode(CountMode.EXACT);
         }
+        if (withFacets) {
+            result.facets(ContractorFacetsDto.builder()
+                .countries(sortByCount(countries))
+                .industries(sortByCount(industries))
+                .orgForms(sortByCount(orgForms))
+                .build());
+        }
+        return result.build();
+    }
+
+    /**
+     * Передает всех активных контрагентов в обработчик по одному, читая их из серверного курсора порциями по
+     * {@code contractor.export.fetch-size} строк. Курсор PostgreSQL работает только внутри транзакции
+     */
+    @Transactional(readOnly = true)
+    public void export(Consumer<ContractorDto> consumer) {
+        int[] rows = new int[1];
+        // Время выгрузки зависит от скорости клиента, поэтому в журнал медленных запросов она не попадает
+        queryMetrics.record("contractor.export", QueryMetrics.NO_SHAPE, null, Map.of(), (sql, args) -> {
+            jdbcTemplate.getJdbcTemplate().query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(EXPORT_SQL,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                statement.setFetchSize(properties.getExport().getFetchSize());
+                return statement;
+            }, (RowCallbackHandler) rs -> {
+                consumer.accept(contractorRowMapper.mapRow(rs, rows[0]));
+                rows[0]++;
+            });
+            return rows[0];
+        }, Integer::intValue);
+    }
 
-        if (StringUtils.isNotBlank(contractorSearch.getCountry())) {
-            sql.append(" AND co.name ILIKE :country");
-            params.put("country", "%" + contractorSearch.getCountry() + "%");
+    private List<ContractorDto> loadSearch(ContractorSearch contractorSearch) {
+        return searchQueryBuilder.build(contractorSearch)
+            .map(query -> queryMetrics.list(SEARCH, query.getShape(), query.getSql(), query.getParams(),
+                (sql, args) -> jdbcTemplate.query(sql, args, contractorRowMapper)))
+            .orElseGet(List::of);
+    }
+
+    /**
+     * После фиксации транзакции сбрасывает записанных контрагентов в кэше чтения по id и весь кэш поиска: по записи
+     * нельзя дешево определить, в какие закэшированные результаты поиска она входит. Уже выполняющиеся чтения тех же
+     * ключей больше не принимают новых участников, иначе чтение после записи получило бы результат, прочитанный до нее
+     */
+    private void invalidateAfterCommit(List<String> ids) {
+        CacheInvalidation.afterCommit(() -> {
+            ids.forEach(id -> singleFlight.forget(FIND_BY_ID, id));
+            singleFlight.forgetAll(SEARCH);
+            contractorCache.invalidateAll(ids);
+            searchCache.invalidateAll();
+        });
+    }
+
+    private List<ContractorDto> findByNumber(String queryName, String sql, String name, String value) {
+        List<ContractorDto> contractors = queryMetrics.list(queryName, sql, Map.of(name, value),
+            (statement, args) -> jdbcTemplate.query(statement, args, contractorRowMapper));
+        if (contractors.isEmpty()) {
+            throw new EmptyResultDataAccessException("Контрагент с " + name.toUpperCase(Locale.ROOT) + " " + value
+                + " не найден", 1);
         }
+        return contractors;
+    }
 
-        if (contractorSearch.getIndustry() != null &&
-            StringUtils.isNotBlank(contractorSearch.getIndustry().getName())) {
-            sql.append(" AND ind.name = :industry");
-            params.put("industry", contractorSearch.getIndustry().getName());
+    private List<ContractorDto> findByKeys(String queryName, String sql, List<String> keys) {
+        if (keys == null || keys.isEmpty()) {
+            return List.of();
+        }
+        if (keys.size() > MAX_LOOKUP_KEYS) {
+            throw new IllegalArgumentException("За один запрос можно найти не больше " + MAX_LOOKUP_KEYS + " контрагентов");
         }
 
-        if (StringUtils.isNotBlank(contractorSearch.getOrgForm())) {
-            sql.append(" AND o.name ILIKE :orgForm");
-            params.put("orgForm", "%" + contractorSearch.getOrgForm() + "%");
+        Object[] distinctKeys = keys.stream().filter(StringUtils::isNotBlank).distinct().toArray();
+        return queryMetrics.list(queryName, sql, Map.of("keys", new SqlArrayValue("text", distinctKeys)),
+            (statement, args) -> jdbcTemplate.query(statement, args, contractorRowMapper));
+    }
+
+    private List<ContractorNodeDto> findHierarchy(String queryName, String sql, String id, Integer depth) {
+        int maxDepth = properties.getHierarchy().getMaxDepth();
+        if (depth != null && (depth < 0 || depth > maxDepth)) {
+            throw new IllegalArgumentException("Глубина должна быть от 0 до " + maxDepth);
         }
 
-        sql.append(" ORDER BY c.name LIMIT :limit OFFSET :offset");
-        params.put("limit", contractorSearch.getLimit());
-        params.put("offset", contractorSearch.getOffset());
+        // Без заданной глубины обход идет на уровень дальше предела: строка за пределом значит, что группа обрезана.
+        // Строки отсортированы по глубине, поэтому такая строка всегда последняя. Ответ целиком собирается в памяти,
+        // чтобы обрезанная группа получила ошибку до начала ответа, а не неполный список
+        List<ContractorNodeDto> nodes = queryMetrics.list(queryName, sql,
+            Map.of("id", id, "maxDepth", depth != null ? depth : maxDepth + 1),
+            (statement, args) -> jdbcTemplate.query(statement, args, contractorNodeRowMapper));
+        if (nodes.isEmpty()) {
+            throw new EmptyResultDataAccessException("Контрагент с ID " + id + " не найден", 1);
+        }
+        if (nodes.getLast().getDepth() > maxDepth) {
+            throw new IllegalArgumentException("Группа контрагента " + id + " глубже " + maxDepth
+                + " уровней, задайте глубину обхода не больше " + maxDepth);
+        }
+        return nodes;
+    }
+
+    private long estimateCount(ContractorSearch contractorSearch) {
+        return searchQueryBuilder.buildEstimate(contractorSearch)
+            .map(query -> queryMetrics.single("contractor.search_estimate", query.getSql(), query.getParams(),
+                (sql, args) -> jdbcTemplate.queryForObject(sql, args, String.class)))
+            .map(ContractorRepository::planRows)
+            .orElse(0L);
+    }
+
+    /**
+     * Оценка количества строк из корня плана EXPLAIN (FORMAT JSON)
+     */
+    private static long planRows(String plan) {
+        try {
+            return PLAN_READER.readTree(plan).path(0).path("Plan").path("Plan Rows").asLong();
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException("Не удалось разобрать план запроса", ex);
+        }
+    }
+
+    private static FacetDto facet(Integer id, Map<Integer, String> names, long count) {
+        return facet(id != null ? id.toString() : null, id != null ? names.get(id) : null, count);
+    }
+
+    private static FacetDto facet(String id, String name, long count) {
+        return FacetDto.builder().id(id).name(name).count(count).build();
+    }
+
+    private static List<FacetDto> sortByCount(List<FacetDto> facets) {
+        facets.sort(Comparator.comparingLong(FacetDto::getCount).reversed());
+        return facets;
+    }
 
-        return jdbcTemplate.query(sql.toString(), params, contractorRowMapper)
-            .stream()
-            .map(contractorConverter::toDto)
-            .collect(Collectors.toList());
+    private static Integer getInteger(ResultSet rs, String column) throws SQLException {
+        int value = rs.getInt(column);
+        return rs.wasNull() ? null : value;
+    }
+
+    private Map<String, Object> toParams(ContractorDto contractorDto) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("id", contractorDto.getId());
+        params.put("parent_id", contractorDto.getParentId());
+        params.put("name", contractorDto.getName());
+        params.put("name_full", contractorDto.getNameFull());
+        params.put("inn", contractorDto.getInn());
+        params.put("ogrn", contractorDto.getOgrn());
+        params.put("country", contractorDto.getCountry());
+        params.put("industry", contractorDto.getIndustry());
+        params.put("orgForm", contractorDto.getOrgForm());
+        return params;
     }
 
 }
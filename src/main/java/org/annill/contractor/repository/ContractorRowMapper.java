@@ -0,0 +1,40 @@
+package org.annill.contractor.repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import org.annill.contractor.dto.ContractorDto;
+import org.springframework.jdbc.core.RowMapper;
+
+/**
+ * Построчное чтение контрагента сразу в {@link ContractorDto}. Колонки читаются по номеру, поэтому запрос должен
+ * выбирать ровно {@link #COLUMNS} в этом порядке
+ *
+ * @author anailina
+ */
+public class ContractorRowMapper implements RowMapper<ContractorDto> {
+
+    /**
+     * Колонки, которые отдает API. Служебные колонки (даты, пользователи, признак активности) не читаются
+     */
+    public static final String COLUMNS = "id, parent_id, name, name_full, inn, ogrn, country, industry, org_form";
+
+    @Override
+    public ContractorDto mapRow(ResultSet rs, int rowNum) throws SQLException {
+        return new ContractorDto(
+            rs.getString(1),
+            rs.getString(2),
+            rs.getString(3),
+            rs.getString(4),
+            rs.getString(5),
+            rs.getString(6),
+            rs.getString(7),
+            getInteger(rs, 8),
+            getInteger(rs, 9));
+    }
+
+    private static Integer getInteger(ResultSet rs, int column) throws SQLException {
+        int value = rs.getInt(column);
+        return rs.wasNull() ? null : value;
+    }
+
+}
@@ -0,0 +1,311 @@
+package org.annill.contractor.repository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.annill.contractor.cache.ReferenceData;
+import org.annill.contractor.cache.ReferenceDataCache;
+import org.annill.contractor.dto.CountryDto;
+import org.annill.contractor.filter.ContractorSearch;
+import org.annill.contractor.filter.PageToken;
+import org.annill.contractor.monitoring.QueryMetrics;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.jdbc.support.SqlArrayValue;
+import org.springframework.stereotype.Component;
+
+/**
+ * Построитель запроса поиска контрагентов. Фильтры по стране, отрасли и организационной форме сначала разрешаются в
+ * наборы id по кэшу справочников, поэтому запрос обходится без соединений со справочными таблицами
+ * <p>
+ * Набор заданных фильтров сводится к битовой маске — форме запроса. Текст SQL для каждой формы собран заранее, поэтому
+ * одинаковые по набору фильтров запросы имеют один и тот же текст: разобранный запрос переиспользуется
+ * {@code NamedParameterJdbcTemplate}, а драйвер PostgreSQL переводит его в серверный prepared statement. Параметры
+ * читаются прямо из фильтра через {@link SearchParameters}
+ *
+ * @author anailina
+ */
+@Component
+public class ContractorSearchQueryBuilder {
+
+    static final int ID = 1;
+    static final int PARENT = 1 << 1;
+    static final int NUMBER = 1 << 2;
+    static final int TEXT = 1 << 3;
+    static final int COUNTRY = 1 << 4;
+    static final int INDUSTRY = 1 << 5;
+    static final int ORG_FORM = 1 << 6;
+    static final int PREFIX = 1 << 7;
+    static final int KEYSET = 1 << 8;
+
+    /**
+     * Триграммный индекс не помогает при поиске подстроки короче трех символов, такой текст ищется по началу
+     * наименования
+     */
+    static final int MIN_SUBSTRING_LENGTH = 3;
+
+    private static final int SHAPES = KEYSET << 1;
+
+    private static final String SEARCH_SELECT_SQL = """
+        SELECT c.id, c.parent_id, c.name, c.name_full, c.inn, c.ogrn, c.country, c.industry, c.org_form
+        FROM contractor c
+        WHERE\s""";
+
+    /**
+     * Общее количество и разбивка по справочникам за один проход по отобранным строкам. GROUPING() отличает итоговые
+     * строки наборов от группы с пустым значением
+     */
+    private static final String AGGREGATE_SELECT_SQL = """
+        SELECT c.country, c.industry, c.org_form, count(*) AS cnt,
+               GROUPING(c.country) AS no_country, GROUPING(c.industry) AS no_industry, GROUPING(c.org_form) AS no_org_form
+        FROM contractor c
+        WHERE\s""";
+
+    /**
+     * Только общее количество: столбцы совпадают с {@link #AGGREGATE_SELECT_SQL}, строка читается как итоговая
+     */
+    private static final String TOTAL_SELECT_SQL = """
+        SELECT NULL::text AS country, NULL::integer AS industry, NULL::integer AS org_form, count(*) AS cnt,
+               1 AS no_country, 1 AS no_industry, 1 AS no_org_form
+        FROM contractor c
+        WHERE\s""";
+
+    private static final String ESTIMATE_SELECT_SQL = """
+        EXPLAIN (FORMAT JSON)
+        SELECT 1
+        FROM contractor c
+        WHERE\s""";
+
+    private static final String FACET_GROUPING_SETS = " GROUP BY GROUPING SETS ((), (c.country), (c.industry), (c.org_form))";
+
+    private static final String[] FILTER_NAMES = new String[KEYSET];
+    private static final String[] SHAPE_NAMES = new String[SHAPES];
+    private static final String[] SEARCH_SQL = new String[SHAPES];
+    private static final String[] TOTAL_SQL = new String[KEYSET];
+    private static final String[] FACET_SQL = new String[KEYSET];
+    private static final String[] ESTIMATE_SQL = new String[KEYSET];
+
+    static {
+        for (int shape = 0; shape < KEYSET; shape++) {
+            String filter = filterSql(shape);
+            TOTAL_SQL[shape] = TOTAL_SELECT_SQL + filter;
+            FACET_SQL[shape] = AGGREGATE_SELECT_SQL + filter + FACET_GROUPING_SETS;
+            ESTIMATE_SQL[shape] = ESTIMATE_SELECT_SQL + filter;
+            SEARCH_SQL[shape] = SEARCH_SELECT_SQL + filter + " ORDER BY c.name, c.id LIMIT :limit OFFSET :offset";
+            SEARCH_SQL[shape | KEYSET] = SEARCH_SELECT_SQL + filter
+                + " AND (c.name, c.id) > (:afterName, :afterId) ORDER BY c.name, c.id LIMIT :limit";
+            FILTER_NAMES[shape] = filterName(shape);
+            SHAPE_NAMES[shape] = FILTER_NAMES[shape] + ":offset";
+            SHAPE_NAMES[shape | KEYSET] = FILTER_NAMES[shape] + ":keyset";
+        }
+    }
+
+    private final ReferenceDataCache referenceDataCache;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Счетчики запросов поиска по формам, регистрируются при первом запросе формы
+     */
+    private final AtomicReferenceArray<Counter> shapeCounters = new AtomicReferenceArray<>(SHAPES);
+
+    public ContractorSearchQueryBuilder(ReferenceDataCache referenceDataCache, MeterRegistry meterRegistry) {
+        this.referenceDataCache = referenceDataCache;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * @return запрос или пустой результат, если фильтр по справочнику не совпал ни с одной записью и искать нечего
+     */
+    public Optional<SearchQuery> build(ContractorSearch contractorSearch) {
+        return bind(contractorSearch, true).map(params -> {
+            int shape = params.getShape();
+            shapeCounter(shape).increment();
+            return new SearchQuery(SEARCH_SQL[shape], params, SHAPE_NAMES[shape]);
+        });
+    }
+
+    /**
+     * Запрос общего количества и, если нужно, количества по странам, отраслям и организационным формам для того же
+     * фильтра, что и {@link #build}. Токен страницы, смещение и лимит не учитываются
+     */
+    public Optional<SearchQuery> buildAggregates(ContractorSearch contractorSearch, boolean withFacets) {
+        return bind(contractorSearch, false).map(params -> new SearchQuery(
+            (withFacets ? FACET_SQL : TOTAL_SQL)[params.getShape()], params, FILTER_NAMES[params.getShape()]));
+    }
+
+    /**
+     * План запроса количества для того же фильтра, что и {@link #build}. Оценка строк в корне плана берется из
+     * статистики планировщика, сам запрос не выполняется
+     */
+    public Optional<SearchQuery> buildEstimate(ContractorSearch contractorSearch) {
+        return bind(contractorSearch, false).map(params -> new SearchQuery(ESTIMATE_SQL[params.getShape()], params,
+            FILTER_NAMES[params.getShape()]));
+    }
+
+    /**
+     * Определяет форму запроса и значения параметров
+     *
+     * @param paged учитывать ли токен страницы
+     */
+    private Optional<SearchParameters> bind(ContractorSearch contractorSearch, boolean paged) {
+        int shape = 0;
+        String searchPrefix = null;
+        String searchText = null;
+        SqlArrayValue countryIds = null;
+        SqlArrayValue industryIds = null;
+        SqlArrayValue orgFormIds = null;
+
+        if (StringUtils.isNotBlank(contractorSearch.getId())) {
+            shape |= ID;
+        }
+
+        if (StringUtils.isNotBlank(contractorSearch.getParentId())) {
+            shape |= PARENT;
+        }
+
+        if (StringUtils.isNotBlank(contractorSearch.getSearchFilter())) {
+            String searchFilter = contractorSearch.getSearchFilter().strip();
+            if (searchFilter.codePointCount(0, searchFilter.length()) < MIN_SUBSTRING_LENGTH) {
+                shape |= PREFIX;
+                searchPrefix = escapeLike(searchFilter.toLowerCase(Locale.ROOT)) + "%";
+            } else {
+                shape |= TEXT;
+                searchText = "%" + escapeLike(searchFilter) + "%";
+            }
+            // Цифры ищутся еще и по началу ИНН или ОГРН. Экранирование и нижний регистр цифры не меняют, поэтому
+            // шаблон начала совпадает с шаблоном короткого текста
+            if (StringUtils.isNumeric(searchFilter)) {
+                shape |= NUMBER;
+                searchPrefix = searchFilter + "%";
+            }
+        }
+
+        if (hasReferenceFilter(contractorSearch)) {
+            ReferenceData referenceData = referenceDataCache.get();
+
+            if (StringUtils.isNotBlank(contractorSearch.getCountry())) {
+                String[] ids = referenceData.getCountries().stream()
+                    .filter(country -> StringUtils.containsIgnoreCase(country.getName(), contractorSearch.getCountry()))
+                    .map(CountryDto::getId)
+                    .toArray(String[]::new);
+                if (ids.length == 0) {
+                    return Optional.empty();
+                }
+                shape |= COUNTRY;
+                countryIds = new SqlArrayValue("text", (Object[]) ids);
+            }
+
+            if (contractorSearch.getIndustry() != null &&
+                StringUtils.isNotBlank(contractorSearch.getIndustry().getName())) {
+                Integer[] ids = referenceData.getIndustries().entrySet().stream()
+                    .filter(industry -> industry.getValue().equals(contractorSearch.getIndustry().getName()))
+                    .map(Map.Entry::getKey)
+                    .toArray(Integer[]::new);
+                if (ids.length == 0) {
+                    return Optional.empty();
+                }
+                shape |= INDUSTRY;
+                industryIds = new SqlArrayValue("int4", (Object[]) ids);
+            }
+
+            if (StringUtils.isNotBlank(contractorSearch.getOrgForm())) {
+                Integer[] ids = referenceData.getOrgForms().entrySet().stream()
+                    .filter(orgForm -> StringUtils.containsIgnoreCase(orgForm.getValue(), contractorSearch.getOrgForm()))
+                    .map(Map.Entry::getKey)
+                    .toArray(Integer[]::new);
+                if (ids.length == 0) {
+                    return Optional.empty();
+                }
+                shape |= ORG_FORM;
+                orgFormIds = new SqlArrayValue("int4", (Object[]) ids);
+            }
+        }
+
+        PageToken pageToken = null;
+        if (paged && StringUtils.isNotBlank(contractorSearch.getPageToken())) {
+            pageToken = PageToken.decode(contractorSearch.getPageToken());
+            shape |= KEYSET;
+        }
+
+        return Optional.of(new SearchParameters(contractorSearch, shape, searchPrefix, searchText, countryIds, industryIds,
+            orgFormIds, paged, pageToken));
+    }
+
+    private Counter shapeCounter(int shape) {
+        Counter counter = shapeCounters.get(shape);
+        if (counter == null) {
+            counter = Counter.builder("contractor.search.shape")
+                .tag("shape", SHAPE_NAMES[shape])
+                .register(meterRegistry);
+            shapeCounters.set(shape, counter);
+        }
+        return counter;
+    }
+
+    /**
+     * Условие WHERE формы без сортировки и страницы
+     */
+    private static String filterSql(int shape) {
+        StringBuilder sql = new StringBuilder("c.is_active = true");
+        if ((shape & ID) != 0) {
+            sql.append(" AND c.id = :contractorId");
+        }
+        if ((shape & PARENT) != 0) {
+            sql.append(" AND c.parent_id = :parentId");
+        }
+        // Условия текстового поиска объединяются через OR: цифры ищутся и в номерах, и в наименованиях
+        StringJoiner text = new StringJoiner(" OR ", " AND (", ")").setEmptyValue("");
+        if ((shape & NUMBER) != 0) {
+            // ИНН и ОГРН состоят только из цифр и ищутся по началу номера через индексы text_pattern_ops
+            text.add("c.inn LIKE :searchPrefix OR c.ogrn LIKE :searchPrefix");
+        }
+        if ((shape & TEXT) != 0) {
+            // Поиск по подстроке в наименованиях обслуживают триграммные GIN-индексы
+            text.add("c.name ILIKE :searchText OR c.name_full ILIKE :searchText");
+        }
+        if ((shape & PREFIX) != 0) {
+            // Короткий текст ищется по началу наименования через индекс lower(name) text_pattern_ops
+            text.add("lower(c.name) LIKE :searchPrefix");
+        }
+        sql.append(text);
+        if ((shape & COUNTRY) != 0) {
+            sql.append(" AND c.country = ANY(:countryIds)");
+        }
+        if ((shape & INDUSTRY) != 0) {
+            sql.append(" AND c.industry = ANY(:industryIds)");
+        }
+        if ((shape & ORG_FORM) != 0) {
+            sql.append(" AND c.org_form = ANY(:orgFormIds)");
+        }
+        return sql.toString();
+    }
+
+    private static String filterName(int shape) {
+        StringJoiner name = new StringJoiner(",").setEmptyValue(QueryMetrics.NO_SHAPE);
+        String[] names = {"id", "parent", "number", "text", "country", "industry", "org_form", "prefix"};
+        for (int i = 0; i < names.length; i++) {
+            if ((shape & (1 << i)) != 0) {
+                name.add(names[i]);
+            }
+        }
+        return name.toString();
+    }
+
+    /**
+     * Экранирует символы шаблона LIKE во введенном тексте, чтобы {@code %} и {@code _} искались как обычные символы.
+     * Символ экранирования — обратная косая черта, он принят в PostgreSQL по умолчанию
+     */
+    private static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    private boolean hasReferenceFilter(ContractorSearch contractorSearch) {
+        return StringUtils.isNotBlank(contractorSearch.getCountry())
+            || contractorSearch.getIndustry() != null && StringUtils.isNotBlank(contractorSearch.getIndustry().getName())
+            || StringUtils.isNotBlank(contractorSearch.getOrgForm());
+    }
+
+}
@@ -2,28 +2,24 @@ package org.annill.contractor.repository;
 
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
-import java.util.stream.Collectors;
 import javax.persistence.EntityNotFoundException;
-import org.annill.contractor.converter.CountryConverter;
+import org.annill.contractor.cache.CacheInvalidation;
+import org.annill.contractor.cache.ReferenceDataCache;
 import org.annill.contractor.dto.CountryDto;
-import org.annill.contractor.entity.Country;
-import org.springframework.jdbc.core.RowMapper;
+import org.annill.contractor.monitoring.QueryMetrics;
+import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Repository;
 
 /**
- * Репозиторий для работы со странами
+ * Репозиторий для работы со странами. Чтение обслуживается из {@link ReferenceDataCache}, запись идет в базу и
+ * обновляет кэш
  *
  * @author anailina
  */
 @Repository
 public class CountryRepository {
 
-    private static final String FIND_ALL_QUERY = "SELECT * FROM country WHERE is_active = true ORDER BY name";
-
-    private static final String FIND_BY_ID_QUERY = "SELECT * FROM country WHERE is_active = true AND id = :id";
-
     private static final String COUNT_BY_ID_QUERY = "SELECT count(*) FROM country WHERE is_active = true AND id = :id";
 
     private static final String UPDATE_QUERY = "UPDATE country SET name = :name WHERE id = :id";
@@ -32,20 +28,27 @@ public class CountryRepository {
 
     private static final String LOGICAL_DELETE_QUERY = "UPDATE country SET is_active = false WHERE id = :id";
 
-    private final CountryConverter countryConverter;
     private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final ReferenceDataCache referenceDataCache;
+    private final QueryMetrics queryMetrics;
 
-    private final RowMapper<Country> countryRowMapper = (rs, rowNum) -> Country.builder().id(rs.getString("id"))
-        .name(rs.getString("name")).isActive(rs.getBoolean("is_active")).build();
-
-    public CountryRepository(CountryConverter countryConverter, NamedParameterJdbcTemplate jdbcTemplate) {
-        this.countryConverter = countryConverter;
+    public CountryRepository(NamedParameterJdbcTemplate jdbcTemplate, ReferenceDataCache referenceDataCache,
+        QueryMetrics queryMetrics) {
         this.jdbcTemplate = jdbcTemplate;
+        this.referenceDataCache = referenceDataCache;
+        this.queryMetrics = queryMetrics;
+    }
+
+    /**
+     * ETag списка стран. Читается до самих данных, чтобы при обновлении справочника между чтениями клиент получил
+     * более новое тело со старым ETag, а не наоборот
+     */
+    public String findCountriesEtag() {
+        return referenceDataCache.get().getCountriesEtag();
     }
 
     public List<CountryDto> findAll() {
-        return jdbcTemplate.query(FIND_ALL_QUERY, countryRowMapper).stream().map(countryConverter::toDto)
-            .collect(Collectors.toList());
+        return referenceDataCache.get().getCountries();
     }
 
     public CountryDto findById(String id) {
@@ -53,22 +56,24 @@ public class CountryRepository {
             throw new IllegalArgumentException("ID страны не может быть пустым");
         }
 
-        Country country = jdbcTemplate.queryForObject(FIND_BY_ID_QUERY, Map.of("id", id), countryRowMapper);
-
-        return Optional.ofNullable(country).map(countryConverter::toDto)
-            .orElseThrow(() -> new EntityNotFoundException("Страна с ID " + id + " не найдена"));
+        CountryDto country = referenceDataCache.get().getCountriesById().get(id);
+        if (country == null) {
+            throw new EmptyResultDataAccessException("Страна с ID " + id + " не найдена", 1);
+        }
+        return country;
     }
 
     public void saveOrUpdate(CountryDto country) {
-        Integer count = jdbcTemplate.queryForObject(COUNT_BY_ID_QUERY, Map.of("id", country.getId()), Integer.class);
+        Integer count = queryMetrics.single("country.count_by_id", COUNT_BY_ID_QUERY, Map.of("id", country.getId()),
+            (sql, args) -> jdbcTemplate.queryForObject(sql, args, Integer.class));
 
+        Map<String, Object> params = Map.of("id", country.getId(), "name", country.getName(), "is_active", true);
         if (count != null && count > 0) {
-            jdbcTemplate.update(UPDATE_QUERY,
-                Map.of("id", country.getId(), "name", country.getName(), "is_active", true));
+            queryMetrics.update("country.update", UPDATE_QUERY, params, jdbcTemplate::update);
         } else {
-            jdbcTemplate.update(INSERT_QUERY,
-                Map.of("id", country.getId(), "name", country.getName(), "is_active", true));
+            queryMetrics.update("country.insert", INSERT_QUERY, params, jdbcTemplate::update);
         }
+        CacheInvalidation.afterCommit(referenceDataCache::refresh);
     }
 
     public void logicalDelete(String id) {
@@ -76,11 +81,13 @@ public class CountryRepository {
             throw new IllegalArgumentException("ID страны не может быть пустым");
         }
 
-        int quantityUpdateCountry = jdbcTemplate.update(LOGICAL_DELETE_QUERY, Map.of("id", id));
+        int quantityUpdateCountry = queryMetrics.update("country.logical_delete", LOGICAL_DELETE_QUERY, Map.of("id", id),
+            jdbcTemplate::update);
 
         if (quantityUpdateCountry == 0) {
             throw new EntityNotFoundException("Страна с ID " + id + " не найдена");
         }
+        CacheInvalidation.afterCommit(referenceDataCache::refresh);
     }
 
 }
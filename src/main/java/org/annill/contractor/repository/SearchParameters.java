@@ -0,0 +1,108 @@
+package org.annill.contractor.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.annill.contractor.filter.ContractorSearch;
+import org.annill.contractor.filter.PageToken;
+import org.springframework.jdbc.core.namedparam.AbstractSqlParameterSource;
+import org.springframework.jdbc.support.SqlArrayValue;
+
+/**
+ * Параметры запроса поиска, которые читаются прямо из фильтра без промежуточной карты. Набор параметров определяется
+ * формой запроса {@link ContractorSearchQueryBuilder}
+ *
+ * @author anailina
+ */
+class SearchParameters extends AbstractSqlParameterSource {
+
+    private final ContractorSearch contractorSearch;
+    private final int shape;
+    private final String searchPrefix;
+    private final String searchText;
+    private final SqlArrayValue countryIds;
+    private final SqlArrayValue industryIds;
+    private final SqlArrayValue orgFormIds;
+    private final boolean paged;
+    private final PageToken pageToken;
+
+    /**
+     * @param paged     запрос страницы; запросы количества и оценки используют только условия фильтра
+     * @param pageToken разобранный токен страницы, если страница запрашивается по ключу
+     */
+    SearchParameters(ContractorSearch contractorSearch, int shape, String searchPrefix, String searchText,
+        SqlArrayValue countryIds, SqlArrayValue industryIds, SqlArrayValue orgFormIds, boolean paged,
+        PageToken pageToken) {
+        this.contractorSearch = contractorSearch;
+        this.shape = shape;
+        this.searchPrefix = searchPrefix;
+        this.searchText = searchText;
+        this.countryIds = countryIds;
+        this.industryIds = industryIds;
+        this.orgFormIds = orgFormIds;
+        this.paged = paged;
+        this.pageToken = pageToken;
+    }
+
+    int getShape() {
+        return shape;
+    }
+
+    @Override
+    public boolean hasValue(String paramName) {
+        return switch (paramName) {
+            case "contractorId", "parentId", "searchPrefix", "searchText", "countryIds", "industryIds", "orgFormIds",
+                 "limit", "offset", "afterName", "afterId" -> true;
+            default -> false;
+        };
+    }
+
+    @Override
+    public Object getValue(String paramName) {
+        return switch (paramName) {
+            case "contractorId" -> contractorSearch.getId();
+            case "parentId" -> contractorSearch.getParentId();
+            case "searchPrefix" -> searchPrefix;
+            case "searchText" -> searchText;
+            case "countryIds" -> countryIds;
+            case "industryIds" -> industryIds;
+            case "orgFormIds" -> orgFormIds;
+            case "limit" -> contractorSearch.getLimit();
+            case "offset" -> contractorSearch.getOffset();
+            case "afterName" -> pageToken != null ? pageToken.getName() : null;
+            case "afterId" -> pageToken != null ? pageToken.getId() : null;
+            default -> throw new IllegalArgumentException("Неизвестный параметр поиска " + paramName);
+        };
+    }
+
+    /**
+     * Имена параметров, которые использует запрос этой формы
+     */
+    @Override
+    public String[] getParameterNames() {
+        List<String> names = new ArrayList<>();
+        addIf(names, ContractorSearchQueryBuilder.ID, "contractorId");
+        addIf(names, ContractorSearchQueryBuilder.PARENT, "parentId");
+        addIf(names, ContractorSearchQueryBuilder.NUMBER | ContractorSearchQueryBuilder.PREFIX, "searchPrefix");
+        addIf(names, ContractorSearchQueryBuilder.TEXT, "searchText");
+        addIf(names, ContractorSearchQueryBuilder.COUNTRY, "countryIds");
+        addIf(names, ContractorSearchQueryBuilder.INDUSTRY, "industryIds");
+        addIf(names, ContractorSearchQueryBuilder.ORG_FORM, "orgFormIds");
+        if (paged) {
+            if (pageToken != null) {
+                names.add("afterName");
+                names.add("afterId");
+            } else {
+                names.add("offset");
+            }
+            names.add("limit");
+        }
+        return names.toArray(String[]::new);
+    }
+
+    private void addIf(List<String> names, int flag, String name) {
+        if ((shape & flag) != 0) {
+            names.add(name);
+        }
+    }
+
+}
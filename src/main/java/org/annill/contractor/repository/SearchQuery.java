@@ -0,0 +1,17 @@
+package org.annill.contractor.repository;
+
+import lombok.Value;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+
+/**
+ * Готовый к выполнению запрос поиска контрагентов. {@code shape} перечисляет использованные условия и служит тегом
+ * метрик запроса
+ */
+@Value
+public class SearchQuery {
+
+    private String sql;
+    private SqlParameterSource params;
+    private String shape;
+
+}
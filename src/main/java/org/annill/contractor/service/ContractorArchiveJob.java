@@ -0,0 +1,44 @@
+package org.annill.contractor.service;
+
+import java.time.LocalDateTime;
+import lombok.extern.slf4j.Slf4j;
+import org.annill.contractor.config.ContractorProperties;
+import org.annill.contractor.repository.ContractorArchiveRepository;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Архивация давно удаленных контрагентов, чтобы в рабочей таблице не копились мертвые строки. По умолчанию выключена,
+ * расписание задается {@code contractor.archive.cron}
+ *
+ * @author anailina
+ */
+@Slf4j
+@Component
+public class ContractorArchiveJob {
+
+    private final ContractorArchiveRepository archiveRepository;
+    private final ContractorProperties properties;
+
+    public ContractorArchiveJob(ContractorArchiveRepository archiveRepository, ContractorProperties properties) {
+        this.archiveRepository = archiveRepository;
+        this.properties = properties;
+    }
+
+    /**
+     * Переносит контрагентов порциями, каждая в своей транзакции, пока находятся подходящие
+     */
+    @Scheduled(cron = "${contractor.archive.cron:-}")
+    public void archive() {
+        ContractorProperties.Archive archive = properties.getArchive();
+        LocalDateTime cutoff = LocalDateTime.now().minus(archive.getRetention());
+        int total = 0;
+        int moved;
+        do {
+            moved = archiveRepository.archiveBatch(cutoff, archive.getBatchSize());
+            total += moved;
+        } while (moved == archive.getBatchSize());
+        log.info("В архив перенесено контрагентов: {}", total);
+    }
+
+}
@@ -0,0 +1,126 @@
+package org.annill.contractor.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.annill.contractor.config.ContractorProperties;
+import org.annill.contractor.dto.BatchSaveResponseDto;
+import org.annill.contractor.dto.BatchSaveResultDto;
+import org.annill.contractor.dto.ContractorDto;
+import org.annill.contractor.repository.ContractorRepository;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+
+/**
+ * Пакетное сохранение контрагентов. Тело запроса читается потоком, поэтому принимается как JSON-массив, так и
+ * последовательность объектов (NDJSON). В памяти одновременно находятся один пакет контрагентов, счетчики и не больше
+ * {@code contractor.batch.max-reported-failures} ошибок, поэтому объем ответа не зависит от размера входного потока
+ *
+ * @author anailina
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ContractorBatchService {
+
+    private final ContractorRepository repository;
+    private final ContractorProperties properties;
+    private final ObjectMapper objectMapper;
+
+    public BatchSaveResponseDto saveAll(InputStream body) throws IOException {
+        int chunkSize = properties.getBatch().getChunkSize();
+        Report report = new Report(properties.getBatch().getMaxReportedFailures());
+        List<ContractorDto> chunk = new ArrayList<>(chunkSize);
+        Set<String> chunkIds = new HashSet<>();
+
+        try (MappingIterator<ContractorDto> contractors = objectMapper.readerFor(ContractorDto.class).readValues(body)) {
+            while (contractors.hasNextValue()) {
+                ContractorDto contractor = contractors.nextValue();
+                if (contractor == null || contractor.getId() == null) {
+                    report.failed(null, "ID контрагента не может быть пустым");
+                    continue;
+                }
+                // Повтор id внутри одного INSERT ... ON CONFLICT недопустим, поэтому текущий пакет сохраняется раньше
+                if (chunk.size() == chunkSize || !chunkIds.add(contractor.getId())) {
+                    saveChunk(chunk, report);
+                    chunk.clear();
+                    chunkIds.clear();
+                    chunkIds.add(contractor.getId());
+                }
+                chunk.add(contractor);
+            }
+        } catch (JsonProcessingException ex) {
+            log.warn("Чтение пакета контрагентов прервано: {}", ex.getOriginalMessage());
+            report.failed(null, "Некорректные данные: " + ex.getOriginalMessage());
+        }
+
+        if (!chunk.isEmpty()) {
+            saveChunk(chunk, report);
+        }
+        return report.toResponse();
+    }
+
+    private void saveChunk(List<ContractorDto> chunk, Report report) {
+        try {
+            repository.upsertAll(chunk);
+            report.saved(chunk.size());
+        } catch (DataAccessException | IllegalArgumentException ex) {
+            log.warn("Пакет из {} контрагентов не сохранен, сохраняем по одному", chunk.size());
+            for (ContractorDto contractor : chunk) {
+                try {
+                    repository.upsert(contractor);
+                    report.saved(1);
+                } catch (DataAccessException recordEx) {
+                    report.failed(contractor.getId(), recordEx.getMostSpecificCause().getMessage());
+                } catch (IllegalArgumentException recordEx) {
+                    report.failed(contractor.getId(), recordEx.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Счетчики сохраненных и несохраненных контрагентов и первые ошибки
+     */
+    private static class Report {
+
+        private final int maxReportedFailures;
+        private final List<BatchSaveResultDto> failures = new ArrayList<>();
+        private int saved;
+        private int failed;
+
+        Report(int maxReportedFailures) {
+            this.maxReportedFailures = maxReportedFailures;
+        }
+
+        void saved(int count) {
+            saved += count;
+        }
+
+        void failed(String id, String message) {
+            failed++;
+            if (failures.size() < maxReportedFailures) {
+                failures.add(BatchSaveResultDto.failed(id, message));
+            }
+        }
+
+        BatchSaveResponseDto toResponse() {
+            return BatchSaveResponseDto.builder()
+                .saved(saved)
+                .failed(failed)
+                .failures(failures)
+                .failuresTruncated(failed > failures.size())
+                .build();
+        }
+
+    }
+
+}
@@ -0,0 +1,31 @@
+package org.annill.contractor.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.annill.contractor.repository.ContractorClosureRepository;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Плановая перестройка таблицы замыкания иерархии. Нужна после прямых изменений contractor в базе, минуя сервис.
+ * По умолчанию выключена, расписание задается {@code contractor.closure.rebuild-cron}
+ *
+ * @author anailina
+ */
+@Slf4j
+@Component
+public class ContractorClosureRebuildJob {
+
+    private final ContractorClosureRepository closureRepository;
+
+    public ContractorClosureRebuildJob(ContractorClosureRepository closureRepository) {
+        this.closureRepository = closureRepository;
+    }
+
+    @Scheduled(cron = "${contractor.closure.rebuild-cron:-}")
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        int links = closureRepository.rebuild();
+        log.info("Таблица замыкания иерархии перестроена: связей {}, {} мс", links, System.currentTimeMillis() - start);
+    }
+
+}
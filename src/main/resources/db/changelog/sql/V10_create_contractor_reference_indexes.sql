@@ -0,0 +1,26 @@
+--liquibase formatted sql
+--changeset annill:create_index_contractor_reference_columns runInTransaction:false
+
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_contractor_active_country
+    ON contractor (country)
+    WHERE is_active = true;
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_contractor_active_industry
+    ON contractor (industry)
+    WHERE is_active = true;
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_contractor_active_org_form
+    ON contractor (org_form)
+    WHERE is_active = true;
+
+-- Физическое удаление при архивации проверяет fk_contractor_parent по всем строкам, а не только по активным
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_contractor_parent_id
+    ON contractor (parent_id)
+    WHERE parent_id IS NOT NULL;
+
+DROP INDEX CONCURRENTLY IF EXISTS idx_contractor_active_parent_id;
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_contractor_inactive_modify_date
+    ON contractor (coalesce(modify_date, create_date))
+    WHERE is_active = false;
@@ -0,0 +1,21 @@
+--liquibase formatted sql
+--changeset annill:create_table_contractor_archive
+
+
+CREATE TABLE IF NOT EXISTS contractor_archive
+(
+    id             varchar(12) PRIMARY KEY NOT NULL,
+    parent_id      varchar(12),
+    name           text                    NOT NULL,
+    name_full      text,
+    inn            text,
+    ogrn           text,
+    country        text,
+    industry       int4,
+    org_form       int4,
+    create_date    timestamp               NOT NULL,
+    modify_date    timestamp,
+    create_user_id text,
+    modify_user_id text,
+    archive_date   timestamp               NOT NULL DEFAULT now()
+);
@@ -0,0 +1,24 @@
+--liquibase formatted sql
+--changeset annill:create_table_contractor_change_log
+
+
+CREATE TABLE IF NOT EXISTS contractor_change_log
+(
+    seq           bigserial PRIMARY KEY NOT NULL,
+    tx_id         xid8                  NOT NULL DEFAULT pg_current_xact_id(),
+    contractor_id varchar(12)           NOT NULL,
+    operation     text                  NOT NULL,
+    change_date   timestamp             NOT NULL DEFAULT now()
+);
+
+CREATE INDEX IF NOT EXISTS idx_contractor_change_log_tx_seq
+    ON contractor_change_log (tx_id, seq);
+
+--changeset annill:fill_contractor_change_log
+
+
+INSERT INTO contractor_change_log (contractor_id, operation, change_date)
+SELECT id, 'INSERT', coalesce(modify_date, create_date)
+FROM contractor
+WHERE is_active = true
+ORDER BY coalesce(modify_date, create_date), id;
@@ -0,0 +1,5 @@
+--liquibase formatted sql
+--changeset annill:add_contractor_version
+
+
+ALTER TABLE contractor ADD COLUMN IF NOT EXISTS version int8 NOT NULL DEFAULT 1;
@@ -0,0 +1,10 @@
+--liquibase formatted sql
+--changeset annill:add_contractor_archive_surrogate_key
+
+
+-- Контрагента можно удалить, восстановить сохранением и снова удалить, поэтому в архиве хранится каждая копия
+ALTER TABLE contractor_archive DROP CONSTRAINT IF EXISTS contractor_archive_pkey;
+ALTER TABLE contractor_archive ADD COLUMN IF NOT EXISTS archive_id bigserial PRIMARY KEY;
+
+CREATE INDEX IF NOT EXISTS idx_contractor_archive_id_archive_date
+    ON contractor_archive (id, archive_date);
@@ -0,0 +1,7 @@
+--liquibase formatted sql
+--changeset annill:create_index_contractor_name_prefix runInTransaction:false
+
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_contractor_active_lower_name_prefix
+    ON contractor (lower(name) text_pattern_ops)
+    WHERE is_active = true;
@@ -0,0 +1,7 @@
+--liquibase formatted sql
+--changeset annill:create_index_contractor_name_id runInTransaction:false
+
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_contractor_active_name_id
+    ON contractor (name, id)
+    WHERE is_active = true;
@@ -0,0 +1,16 @@
+--liquibase formatted sql
+--changeset annill:create_extension_pg_trgm
+
+
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+--changeset annill:create_index_contractor_text_search runInTransaction:false
+
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_contractor_active_name_trgm
+    ON contractor USING gin (name gin_trgm_ops)
+    WHERE is_active = true;
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_contractor_active_name_full_trgm
+    ON contractor USING gin (name_full gin_trgm_ops)
+    WHERE is_active = true;
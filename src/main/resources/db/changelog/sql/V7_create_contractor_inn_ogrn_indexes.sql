@@ -0,0 +1,11 @@
+--liquibase formatted sql
+--changeset annill:create_index_contractor_inn_ogrn runInTransaction:false
+
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_contractor_active_inn
+    ON contractor (inn text_pattern_ops)
+    WHERE is_active = true;
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_contractor_active_ogrn
+    ON contractor (ogrn text_pattern_ops)
+    WHERE is_active = true;
@@ -0,0 +1,7 @@
+--liquibase formatted sql
+--changeset annill:create_index_contractor_parent_id runInTransaction:false
+
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_contractor_active_parent_id
+    ON contractor (parent_id)
+    WHERE is_active = true AND parent_id IS NOT NULL;
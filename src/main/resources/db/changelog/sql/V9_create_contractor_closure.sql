@@ -0,0 +1,34 @@
+--liquibase formatted sql
+--changeset annill:create_table_contractor_closure
+
+
+CREATE TABLE IF NOT EXISTS contractor_closure
+(
+    ancestor_id   varchar(12) NOT NULL,
+    descendant_id varchar(12) NOT NULL,
+    depth         int4        NOT NULL,
+
+    CONSTRAINT pk_contractor_closure
+        PRIMARY KEY (ancestor_id, descendant_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_contractor_closure_descendant
+    ON contractor_closure (descendant_id, depth);
+
+--changeset annill:fill_contractor_closure
+
+
+INSERT INTO contractor_closure (ancestor_id, descendant_id, depth)
+WITH RECURSIVE tree AS (
+    SELECT id AS ancestor_id, id AS descendant_id, 0 AS depth, ARRAY[id] AS path
+    FROM contractor
+    WHERE is_active = true
+    UNION ALL
+    SELECT t.ancestor_id, c.id, t.depth + 1, t.path || c.id
+    FROM tree t
+    JOIN contractor c ON c.parent_id = t.descendant_id
+    WHERE c.is_active = true AND c.id <> ALL(t.path)
+)
+SELECT ancestor_id, descendant_id, depth
+FROM tree
+ON CONFLICT DO NOTHING;
@@ -0,0 +1,76 @@
+package org.annill.contractor;
+
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import io.micrometer.core.instrument.MeterRegistry;
+import javax.sql.DataSource;
+import org.annill.contractor.monitoring.PoolMonitoringDataSource;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+@Testcontainers
+@SpringBootTest
+@AutoConfigureMockMvc
+class ConnectionPoolMonitoringTest {
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16")
+        .withDatabaseName("contractor")
+        .withUsername("myuser")
+        .withPassword("secret");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Test
+    void dataSource_shouldBeWrappedAndKeepHikariMetrics() {
+        assertInstanceOf(PoolMonitoringDataSource.class, dataSource);
+        jdbcTemplate.getJdbcTemplate().execute("SELECT 1");
+
+        assertNotNull(meterRegistry.find("hikaricp.connections.max").tag("pool", "contractor-pool").gauge());
+        assertNotNull(meterRegistry.find("hikaricp.connections.active").tag("pool", "contractor-pool").gauge());
+        assertNotNull(meterRegistry.find("hikaricp.connections.acquire").tag("pool", "contractor-pool").timer());
+    }
+
+    @Test
+    void pool_shouldReturnPoolState() throws Exception {
+        jdbcTemplate.getJdbcTemplate().execute("SELECT 1");
+
+        mockMvc.perform(get("/actuator/pool"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.poolName").value("contractor-pool"))
+            .andExpect(jsonPath("$.maximumPoolSize").value(20))
+            .andExpect(jsonPath("$.total").isNumber())
+            .andExpect(jsonPath("$.pending").value(0))
+            .andExpect(jsonPath("$.acquireCount").isNumber());
+    }
+
+}
@@ -0,0 +1,134 @@
+package org.annill.contractor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.annill.contractor.config.ContractorProperties;
+import org.annill.contractor.dto.BatchSaveResponseDto;
+import org.annill.contractor.dto.BatchSaveStatus;
+import org.annill.contractor.dto.ContractorDto;
+import org.annill.contractor.repository.ContractorRepository;
+import org.annill.contractor.service.ContractorBatchService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+@ExtendWith(MockitoExtension.class)
+class ContractorBatchServiceTest {
+
+    @Mock
+    private ContractorRepository repository;
+
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+    private final ContractorProperties properties = new ContractorProperties();
+
+    private ContractorBatchService service;
+
+    private final ContractorDto first = TestData.createContractorDto();
+    private final ContractorDto second = first.toBuilder().id("124").build();
+    private final ContractorDto third = first.toBuilder().id("125").build();
+
+    @BeforeEach
+    void setUp() {
+        properties.getBatch().setChunkSize(2);
+        service = new ContractorBatchService(repository, properties, objectMapper);
+    }
+
+    @Test
+    void saveAll_shouldSplitArrayIntoChunks() throws Exception {
+        BatchSaveResponseDto response = service.saveAll(json(List.of(first, second, third)));
+
+        verify(repository).upsertAll(List.of(first, second));
+        verify(repository).upsertAll(List.of(third));
+        assertEquals(3, response.getSaved());
+        assertEquals(0, response.getFailed());
+    }
+
+    @Test
+    void saveAll_shouldReadNdjson() throws Exception {
+        String ndjson = objectMapper.writeValueAsString(first) + "\n" + objectMapper.writeValueAsString(second) + "\n";
+
+        BatchSaveResponseDto response = service.saveAll(
+            new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)));
+
+        verify(repository).upsertAll(List.of(first, second));
+        assertEquals(2, response.getSaved());
+    }
+
+    @Test
+    void saveAll_shouldNotRepeatIdWithinChunk() throws Exception {
+        ContractorDto renamed = first.toBuilder().name("ООО Василек").build();
+
+        service.saveAll(json(List.of(first, renamed)));
+
+        verify(repository).upsertAll(List.of(first));
+        verify(repository).upsertAll(List.of(renamed));
+    }
+
+    @Test
+    void saveAll_shouldFallBackToSingleRecordsWhenChunkFails() throws Exception {
+        doThrow(new DataIntegrityViolationException("fk")).when(repository).upsertAll(any());
+        doThrow(new DataIntegrityViolationException("fk")).when(repository).upsert(second);
+
+        BatchSaveResponseDto response = service.saveAll(json(List.of(first, second)));
+
+        verify(repository, times(2)).upsert(any());
+        assertEquals(1, response.getSaved());
+        assertEquals(1, response.getFailed());
+        assertEquals(1, response.getFailures().size());
+        assertEquals(BatchSaveStatus.FAILED, response.getFailures().get(0).getStatus());
+        assertEquals(second.getId(), response.getFailures().get(0).getId());
+    }
+
+    @Test
+    void saveAll_shouldReportRecordWithParentFromOwnGroup() throws Exception {
+        doThrow(new IllegalArgumentException("цикл")).when(repository).upsertAll(any());
+        doThrow(new IllegalArgumentException("цикл")).when(repository).upsert(first);
+
+        BatchSaveResponseDto response = service.saveAll(json(List.of(first, second)));
+
+        assertEquals(1, response.getSaved());
+        assertEquals(first.getId(), response.getFailures().get(0).getId());
+        assertEquals("цикл", response.getFailures().get(0).getMessage());
+    }
+
+    @Test
+    void saveAll_shouldCountAllFailuresButReportOnlyFirst() throws Exception {
+        properties.getBatch().setMaxReportedFailures(1);
+        ContractorDto withoutId = first.toBuilder().id(null).build();
+
+        BatchSaveResponseDto response = service.saveAll(json(List.of(withoutId, withoutId, withoutId, first)));
+
+        assertEquals(1, response.getSaved());
+        assertEquals(3, response.getFailed());
+        assertEquals(1, response.getFailures().size());
+        assertTrue(response.isFailuresTruncated());
+    }
+
+    @Test
+    void saveAll_shouldReportRecordWithoutId() throws Exception {
+        BatchSaveResponseDto response = service.saveAll(json(List.of(first.toBuilder().id(null).build())));
+
+        assertEquals(0, response.getSaved());
+        assertEquals(1, response.getFailed());
+        assertFalse(response.isFailuresTruncated());
+    }
+
+    private ByteArrayInputStream json(List<ContractorDto> contractors) throws Exception {
+        return new ByteArrayInputStream(objectMapper.writeValueAsBytes(contractors));
+    }
+
+}
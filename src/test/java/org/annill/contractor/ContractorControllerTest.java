@@ -1,32 +1,58 @@
 package org.annill.contractor;
 
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.function.Consumer;
 import org.annill.contractor.controller.ContractorController;
+import org.annill.contractor.dto.BatchSaveResponseDto;
+import org.annill.contractor.dto.BatchSaveResultDto;
+import org.annill.contractor.dto.ContractorChangeDto;
+import org.annill.contractor.dto.ContractorChangesDto;
 import org.annill.contractor.dto.ContractorDto;
+import org.annill.contractor.dto.ContractorNodeDto;
+import org.annill.contractor.dto.ContractorSearchResultDto;
+import org.annill.contractor.entity.VersionedContractor;
+import org.annill.contractor.export.ContractorExportWriter;
 import org.annill.contractor.filter.ContractorSearch;
+import org.annill.contractor.filter.PageToken;
+import org.annill.contractor.repository.ContractorChangeRepository;
 import org.annill.contractor.repository.ContractorRepository;
+import org.annill.contractor.service.ContractorBatchService;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 
 @WebMvcTest(ContractorController.class)
+@Import(ContractorExportWriter.class)
 public class ContractorControllerTest {
 
     @Autowired
@@ -35,6 +61,12 @@ public class ContractorControllerTest {
     @MockitoBean
     private ContractorRepository repository;
 
+    @MockitoBean
+    private ContractorBatchService batchService;
+
+    @MockitoBean
+    private ContractorChangeRepository changeRepository;
+
     @Autowired
     private ObjectMapper objectMapper;
 
@@ -55,10 +87,11 @@ public class ContractorControllerTest {
 
     @Test
     public void testGetById() throws Exception {
-        when(repository.findById(expected.getId())).thenReturn(expected);
+        when(repository.findVersionedById(expected.getId())).thenReturn(new VersionedContractor(expected, 42));
 
         MvcResult result = mockMvc.perform(get(String.format("/contractor/%s", expected.getId())))
             .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, "\"42\""))
             .andReturn();
 
 
@@ -88,10 +121,175 @@ public class ContractorControllerTest {
 
     @Test
     public void testWrongGetId() throws Exception {
-        when(repository.findById(expected.getId())).thenThrow(new DataIntegrityViolationException("wrong"));
+        when(repository.findVersionedById(expected.getId())).thenThrow(new DataIntegrityViolationException("wrong"));
 
         mockMvc.perform(get(String.format("/contractor/%s", expected.getId()))).andExpect(status().isNotFound());
 
     }
 
+    @Test
+    public void testSearchReturnsNextPageToken() throws Exception {
+        ContractorSearch onePageSearch = search.toBuilder().limit(1).build();
+        when(repository.search(onePageSearch)).thenReturn(List.of(expected));
+
+        mockMvc.perform(post("/contractor/search").contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(onePageSearch)))
+            .andExpect(status().isOk())
+            .andExpect(header().string(ContractorController.NEXT_PAGE_TOKEN_HEADER,
+                PageToken.of(expected).encode()));
+    }
+
+    @Test
+    public void testExportNdjson() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<ContractorDto> consumer = invocation.getArgument(0);
+            consumer.accept(expected);
+            consumer.accept(expected);
+            return null;
+        }).when(repository).export(any());
+
+        MvcResult result = mockMvc.perform(get("/contractor/export"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        String line = objectMapper.writeValueAsString(expected);
+        mockMvc.perform(asyncDispatch(result))
+            .andExpect(status().isOk())
+            .andExpect(content().contentTypeCompatibleWith("application/x-ndjson"))
+            .andExpect(content().string(line + "\n" + line + "\n"));
+    }
+
+    @Test
+    public void testExportCsv() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<ContractorDto> consumer = invocation.getArgument(0);
+            consumer.accept(expected.toBuilder().name("ООО \"Ромашка\", филиал").build());
+            return null;
+        }).when(repository).export(any());
+
+        MvcResult result = mockMvc.perform(get("/contractor/export").param("format", "csv"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+            .andExpect(status().isOk())
+            .andExpect(content().string("id,parent_id,name,name_full,inn,ogrn,country,industry,org_form\n"
+                + "123,,\"ООО \"\"Ромашка\"\", филиал\",Общество с ограниченной ответственностью Ромашка,"
+                + "7701234567,1027700132195,RUS,5,1\n"));
+    }
+
+    @Test
+    public void testExportUnknownFormat() throws Exception {
+        mockMvc.perform(get("/contractor/export").param("format", "xml"))
+            .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void testSaveBatch() throws Exception {
+        BatchSaveResponseDto response = BatchSaveResponseDto.builder().saved(1).failed(1)
+            .failures(List.of(BatchSaveResultDto.failed(null, "ID контрагента не может быть пустым"))).build();
+        when(batchService.saveAll(any())).thenReturn(response);
+
+        MvcResult result = mockMvc.perform(put("/contractor/save/batch").contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(List.of(expected))))
+            .andExpect(status().isOk())
+            .andReturn();
+
+        Assertions.assertEquals(response,
+            objectMapper.readValue(result.getResponse().getContentAsString(), BatchSaveResponseDto.class));
+    }
+
+    @Test
+    public void testGetByInn() throws Exception {
+        when(repository.findByInn(expected.getInn())).thenReturn(List.of(expected));
+
+        mockMvc.perform(get(String.format("/contractor/by-inn/%s", expected.getInn())))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$[0].id").value(expected.getId()))
+            .andExpect(jsonPath("$[0].inn").value(expected.getInn()));
+    }
+
+    @Test
+    public void testGetByInns() throws Exception {
+        when(repository.findByInns(List.of(expected.getInn()))).thenReturn(List.of(expected));
+
+        mockMvc.perform(post("/contractor/by-inn").contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(List.of(expected.getInn()))))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$[0].inn").value(expected.getInn()));
+    }
+
+    @Test
+    public void testGetDescendants() throws Exception {
+        when(repository.findDescendants(expected.getId(), 2)).thenReturn(List.of(new ContractorNodeDto(0, expected)));
+
+        mockMvc.perform(get(String.format("/contractor/%s/descendants", expected.getId())).param("depth", "2"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$[0].depth").value(0))
+            .andExpect(jsonPath("$[0].id").value(expected.getId()));
+    }
+
+    @Test
+    public void testIsDescendantOf() throws Exception {
+        when(repository.isDescendant("125", "123")).thenReturn(true);
+
+        mockMvc.perform(get("/contractor/125/is-descendant-of/123"))
+            .andExpect(status().isOk())
+            .andExpect(content().string("true"));
+    }
+
+    @Test
+    public void testSearchPage() throws Exception {
+        ContractorSearchResultDto page = ContractorSearchResultDto.builder().items(List.of(expected)).total(1L).build();
+        when(repository.searchPage(search, true, false, false)).thenReturn(page);
+
+        mockMvc.perform(post("/contractor/search/page").contentType(MediaType.APPLICATION_JSON).content(jsonSearch))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.total").value(1))
+            .andExpect(jsonPath("$.items[0].id").value(expected.getId()));
+    }
+
+    @Test
+    public void testGetByIdNotModified() throws Exception {
+        when(repository.findVersion(expected.getId())).thenReturn(42L);
+
+        mockMvc.perform(get(String.format("/contractor/%s", expected.getId())).header(HttpHeaders.IF_NONE_MATCH, "\"42\""))
+            .andExpect(status().isNotModified())
+            .andExpect(content().string(""));
+        verify(repository, never()).findVersionedById(expected.getId());
+
+        when(repository.findVersionedById(expected.getId())).thenReturn(new VersionedContractor(expected, 43));
+        mockMvc.perform(get(String.format("/contractor/%s", expected.getId())).header(HttpHeaders.IF_NONE_MATCH, "\"42\""))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, "\"43\""));
+    }
+
+    @Test
+    public void testGetChanges() throws Exception {
+        ContractorChangesDto changes = new ContractorChangesDto(List.of(new ContractorChangeDto(expected.getId(), "UPDATE",
+            LocalDateTime.of(2026, 1, 1, 0, 0), expected)), "next");
+        when(changeRepository.findChanges("cursor", 100)).thenReturn(changes);
+
+        mockMvc.perform(get("/contractor/changes").param("since", "cursor").param("limit", "100"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.changes[0].operation").value("UPDATE"))
+            .andExpect(jsonPath("$.changes[0].contractor.id").value(expected.getId()))
+            .andExpect(jsonPath("$.nextCursor").value("next"));
+    }
+
+    @Test
+    public void testSaveIfMatch() throws Exception {
+        when(repository.update(expected, 42L)).thenReturn(43L);
+        when(repository.update(expected, 41L)).thenThrow(new OptimisticLockingFailureException("conflict"));
+
+        mockMvc.perform(put("/contractor/save").contentType(MediaType.APPLICATION_JSON).content(jsonResponse)
+                .header(HttpHeaders.IF_MATCH, "\"42\""))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, "\"43\""));
+        mockMvc.perform(put("/contractor/save").contentType(MediaType.APPLICATION_JSON).content(jsonResponse)
+                .header(HttpHeaders.IF_MATCH, "\"41\""))
+            .andExpect(status().isPreconditionFailed());
+        verify(repository, never()).saveOrUpdate(any());
+    }
+
 }
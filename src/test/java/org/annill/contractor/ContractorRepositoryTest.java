@@ -1,18 +1,52 @@
 package org.annill.contractor;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.IntStream;
+import javax.persistence.EntityNotFoundException;
+import org.annill.contractor.cache.ContractorCache;
+import org.annill.contractor.cache.ContractorSearchCache;
+import org.annill.contractor.config.ContractorProperties;
+import org.annill.contractor.dto.ContractorChangeDto;
+import org.annill.contractor.dto.ContractorChangesDto;
 import org.annill.contractor.dto.ContractorDto;
+import org.annill.contractor.dto.ContractorNodeDto;
+import org.annill.contractor.dto.ContractorSearchResultDto;
+import org.annill.contractor.dto.CountMode;
+import org.annill.contractor.dto.FacetDto;
+import org.annill.contractor.dto.SlowQueryDto;
 import org.annill.contractor.entity.Industry;
 import org.annill.contractor.filter.ContractorSearch;
+import org.annill.contractor.filter.PageToken;
+import org.annill.contractor.monitoring.SlowQueryRecorder;
+import org.annill.contractor.repository.ContractorArchiveRepository;
+import org.annill.contractor.repository.ContractorChangeRepository;
+import org.annill.contractor.repository.ContractorClosureRepository;
 import org.annill.contractor.repository.ContractorRepository;
+import org.annill.contractor.repository.ContractorSearchQueryBuilder;
+import org.annill.contractor.repository.SearchQuery;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.namedparam.BeanPropertySqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.test.annotation.Rollback;
 import org.springframework.test.context.DynamicPropertyRegistry;
@@ -41,16 +75,45 @@ class ContractorRepositoryTest {
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private ContractorCache contractorCache;
+
+    @Autowired
+    private ContractorSearchCache searchCache;
+
     ContractorDto contractorDto = TestData.createContractorDto();
 
     @BeforeEach
     void clearDatabase() {
-        jdbcTemplate.getJdbcTemplate().execute("TRUNCATE TABLE contractor");
+        jdbcTemplate.getJdbcTemplate().execute("TRUNCATE TABLE contractor, contractor_closure, contractor_archive, contractor_change_log");
+        contractorCache.invalidateAll();
+        searchCache.invalidateAll();
     }
 
     @Autowired
     private ContractorRepository repository;
 
+    @Autowired
+    private ContractorClosureRepository closureRepository;
+
+    @Autowired
+    private ContractorProperties properties;
+
+    @Autowired
+    private ContractorArchiveRepository archiveRepository;
+
+    @Autowired
+    private ContractorChangeRepository changeRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private SlowQueryRecorder slowQueryRecorder;
+
+    @Autowired
+    private ContractorSearchQueryBuilder searchQueryBuilder;
+
     @Test
     @Rollback
     void saveOrUpdate_shouldInsertNewContractor() {
@@ -95,6 +158,14 @@ class ContractorRepositoryTest {
     }
 
 
+    @Test
+    void findById_shouldKeepEmptyReferenceColumnsAsNull() {
+        ContractorDto withoutReferences = contractorDto.toBuilder().country(null).industry(null).orgForm(null).build();
+        repository.saveOrUpdate(withoutReferences);
+
+        assertEquals(withoutReferences, repository.findById(withoutReferences.getId()));
+    }
+
     @Test
     @Rollback
     void logicalDelete_shouldDeactivateContractor() {
@@ -104,6 +175,20 @@ class ContractorRepositoryTest {
 
         assertThrows(EmptyResultDataAccessException.class,
             () -> repository.findById(contractorDto.getId()));
+        assertThrows(EntityNotFoundException.class, () -> repository.logicalDelete(contractorDto.getId()));
+    }
+
+    @Test
+    void logicalDelete_shouldIgnoreCachedMissingContractor() {
+        assertThrows(EmptyResultDataAccessException.class, () -> repository.findById(contractorDto.getId()));
+        jdbcTemplate.update("""
+            INSERT INTO contractor (id, name, name_full, inn, ogrn, country, industry, org_form)
+            VALUES (:id, :name, :nameFull, :inn, :ogrn, :country, :industry, :orgForm)""",
+            new BeanPropertySqlParameterSource(contractorDto));
+
+        repository.logicalDelete(contractorDto.getId());
+
+        assertThrows(EntityNotFoundException.class, () -> repository.logicalDelete(contractorDto.getId()));
     }
 
     @Test
@@ -204,4 +289,564 @@ class ContractorRepositoryTest {
         assertEquals(0, results.size());
     }
 
+    @Test
+    void search_shouldWalkPagesByToken() {
+        ContractorDto second = contractorDto.toBuilder().id("124").name("ООО Василек")
+            .inn("7701234568").ogrn("1027700132196").build();
+        ContractorDto third = contractorDto.toBuilder().id("125").name("ООО Лютик")
+            .inn("7701234569").ogrn("1027700132197").build();
+        repository.saveOrUpdate(contractorDto);
+        repository.saveOrUpdate(second);
+        repository.saveOrUpdate(third);
+
+        List<ContractorDto> firstPage = repository.search(ContractorSearch.builder().limit(2).offset(0).build());
+        assertEquals(List.of(second, third), firstPage);
+
+        ContractorSearch nextPageSearch = ContractorSearch.builder()
+            .limit(2)
+            .pageToken(PageToken.of(firstPage.getLast()).encode())
+            .build();
+        assertEquals(List.of(contractorDto), repository.search(nextPageSearch));
+    }
+
+    @Test
+    void search_shouldRejectMalformedToken() {
+        ContractorSearch contractorSearch = ContractorSearch.builder().limit(2).pageToken("%%%").build();
+        assertThrows(IllegalArgumentException.class, () -> repository.search(contractorSearch));
+    }
+
+    @Test
+    void export_shouldStreamActiveContractors() {
+        ContractorDto deleted = contractorDto.toBuilder().id("124").inn("7701234568").ogrn("1027700132196").build();
+        repository.saveOrUpdate(contractorDto);
+        repository.saveOrUpdate(deleted);
+        repository.logicalDelete(deleted.getId());
+
+        List<ContractorDto> exported = new ArrayList<>();
+        repository.export(exported::add);
+
+        assertEquals(List.of(contractorDto), exported);
+    }
+
+    @Test
+    void upsertAll_shouldInsertAndUpdateInOneBatch() {
+        repository.saveOrUpdate(contractorDto);
+        ContractorDto renamed = contractorDto.toBuilder().name("ООО Василек").build();
+        ContractorDto inserted = contractorDto.toBuilder().id("124").inn("7701234568").ogrn("1027700132196").build();
+
+        repository.upsertAll(List.of(renamed, inserted));
+
+        assertEquals(renamed, repository.findById(renamed.getId()));
+        assertEquals(inserted, repository.findById(inserted.getId()));
+    }
+
+    @Test
+    void search_shouldResolveReferenceFiltersWithoutExactName() {
+        repository.saveOrUpdate(contractorDto);
+        ContractorSearch contractorSearch = ContractorSearch.builder()
+            .country("российская")
+            .limit(10)
+            .offset(0)
+            .build();
+
+        assertEquals(List.of(contractorDto), repository.search(contractorSearch));
+    }
+
+    @Test
+    void search_shouldFindByInnPrefixOnly() {
+        repository.saveOrUpdate(contractorDto);
+
+        assertEquals(List.of(contractorDto),
+            repository.search(ContractorSearch.builder().searchFilter("770123").limit(10).offset(0).build()));
+        assertEquals(List.of(contractorDto),
+            repository.search(ContractorSearch.builder().searchFilter("10277001").limit(10).offset(0).build()));
+        assertEquals(0,
+            repository.search(ContractorSearch.builder().searchFilter("1234567").limit(10).offset(0).build()).size());
+    }
+
+    @Test
+    void search_shouldFindDigitsInNameAsWellAsInnPrefix() {
+        ContractorDto plant = contractorDto.toBuilder().id("124").name("Завод 2024").inn("5001234567")
+            .ogrn("1025000132195").build();
+        repository.upsertAll(List.of(contractorDto, plant));
+
+        assertEquals(List.of(plant),
+            repository.search(ContractorSearch.builder().searchFilter("2024").limit(10).offset(0).build()));
+        assertEquals(List.of(plant),
+            repository.search(ContractorSearch.builder().searchFilter("500").limit(10).offset(0).build()));
+    }
+
+    @Test
+    void search_shouldFindByNameSubstring() {
+        repository.saveOrUpdate(contractorDto);
+
+        assertEquals(List.of(contractorDto),
+            repository.search(ContractorSearch.builder().searchFilter("ромаш").limit(10).offset(0).build()));
+    }
+
+    @Test
+    void search_shouldFindShortTextByNamePrefixOnly() {
+        repository.saveOrUpdate(contractorDto);
+
+        assertEquals(List.of(contractorDto),
+            repository.search(ContractorSearch.builder().searchFilter("оо").limit(10).offset(0).build()));
+        assertEquals(0,
+            repository.search(ContractorSearch.builder().searchFilter("ро").limit(10).offset(0).build()).size());
+    }
+
+    @Test
+    void search_shouldTreatLikeWildcardsAsPlainCharacters() {
+        ContractorDto percent = contractorDto.toBuilder().id("124").name("ООО 100% Ромашка").inn("7701234568")
+            .ogrn("1027700132196").build();
+        repository.saveOrUpdate(contractorDto);
+        repository.saveOrUpdate(percent);
+
+        assertEquals(List.of(percent),
+            repository.search(ContractorSearch.builder().searchFilter("0% р").limit(10).offset(0).build()));
+        assertEquals(0,
+            repository.search(ContractorSearch.builder().searchFilter("о_о").limit(10).offset(0).build()).size());
+        assertEquals(0,
+            repository.search(ContractorSearch.builder().searchFilter("%").limit(10).offset(0).build()).size());
+    }
+
+    @Test
+    void findByInnAndOgrn_shouldReturnExactMatchOnly() {
+        repository.saveOrUpdate(contractorDto);
+
+        assertEquals(List.of(contractorDto), repository.findByInn(contractorDto.getInn()));
+        assertEquals(List.of(contractorDto), repository.findByOgrn(contractorDto.getOgrn()));
+        assertThrows(EmptyResultDataAccessException.class, () -> repository.findByInn("770123"));
+    }
+
+    @Test
+    void findByInn_shouldReturnEverySubdivisionWithSameInn() {
+        ContractorDto branch = contractorDto.toBuilder().id("124").name("ООО Ромашка, филиал").build();
+        repository.upsertAll(List.of(contractorDto, branch));
+
+        assertEquals(2, repository.findByInn(contractorDto.getInn()).size());
+        assertEquals(2, repository.findByOgrn(contractorDto.getOgrn()).size());
+    }
+
+    @Test
+    void findByInns_shouldAnswerBatchInOneQuery() {
+        ContractorDto second = contractorDto.toBuilder().id("124").inn("7701234568").ogrn("1027700132196").build();
+        repository.saveOrUpdate(contractorDto);
+        repository.saveOrUpdate(second);
+
+        List<ContractorDto> found = repository.findByInns(List.of("7701234567", "7701234568", "0000000000"));
+
+        assertEquals(2, found.size());
+        assertEquals(List.of(second), repository.findByOgrns(List.of("1027700132196")));
+    }
+
+    @Test
+    void findByInns_shouldRejectTooManyKeys() {
+        List<String> inns = IntStream.range(0, 1001).mapToObj(String::valueOf).toList();
+        assertThrows(IllegalArgumentException.class, () -> repository.findByInns(inns));
+    }
+
+    @Test
+    void findById_shouldServeCachedValueUntilWriteThroughRepository() {
+        repository.saveOrUpdate(contractorDto);
+        assertEquals(contractorDto, repository.findById(contractorDto.getId()));
+
+        jdbcTemplate.getJdbcTemplate().execute("UPDATE contractor SET name = 'Другое' WHERE id = '123'");
+        assertEquals(contractorDto, repository.findById(contractorDto.getId()));
+
+        ContractorDto renamed = contractorDto.toBuilder().name("ООО Василек").build();
+        repository.saveOrUpdate(renamed);
+        assertEquals(renamed, repository.findById(contractorDto.getId()));
+    }
+
+    @Test
+    void findById_shouldCacheMissingContractorUntilSaved() {
+        assertThrows(EmptyResultDataAccessException.class, () -> repository.findById(contractorDto.getId()));
+
+        repository.saveOrUpdate(contractorDto);
+
+        assertEquals(contractorDto, repository.findById(contractorDto.getId()));
+    }
+
+    @Test
+    void findDescendants_shouldWalkActiveGroupWithDepth() {
+        ContractorDto child = contractorDto.toBuilder().id("124").parentId("123").name("ООО Василек")
+            .inn("7701234568").ogrn("1027700132196").build();
+        ContractorDto grandchild = contractorDto.toBuilder().id("125").parentId("124").name("ООО Лютик")
+            .inn("7701234569").ogrn("1027700132197").build();
+        ContractorDto deleted = contractorDto.toBuilder().id("126").parentId("123").name("ООО Астра")
+            .inn("7701234570").ogrn("1027700132198").build();
+        repository.upsertAll(List.of(contractorDto, child, grandchild, deleted));
+        repository.logicalDelete(deleted.getId());
+
+        assertEquals(List.of(new ContractorNodeDto(0, contractorDto), new ContractorNodeDto(1, child),
+            new ContractorNodeDto(2, grandchild)), repository.findDescendants("123", null));
+        assertEquals(List.of(new ContractorNodeDto(0, contractorDto), new ContractorNodeDto(1, child)),
+            repository.findDescendants("123", 1));
+        assertEquals(List.of(new ContractorNodeDto(0, grandchild), new ContractorNodeDto(1, child),
+            new ContractorNodeDto(2, contractorDto)), repository.findAncestors("125", null));
+    }
+
+    @Test
+    void findDescendants_shouldStopOnCycle() {
+        ContractorDto child = contractorDto.toBuilder().id("124").parentId("123")
+            .inn("7701234568").ogrn("1027700132196").build();
+        repository.upsertAll(List.of(contractorDto, child));
+        jdbcTemplate.getJdbcTemplate().execute("UPDATE contractor SET parent_id = '124' WHERE id = '123'");
+
+        assertEquals(2, repository.findDescendants("123", null).size());
+        assertEquals(2, repository.findAncestors("123", null).size());
+    }
+
+    @Test
+    void findDescendants_shouldRejectGroupDeeperThanMaxDepth() {
+        int maxDepth = properties.getHierarchy().getMaxDepth();
+        ContractorDto child = contractorDto.toBuilder().id("124").parentId("123")
+            .inn("7701234568").ogrn("1027700132196").build();
+        ContractorDto grandchild = contractorDto.toBuilder().id("125").parentId("124")
+            .inn("7701234569").ogrn("1027700132197").build();
+        repository.upsertAll(List.of(contractorDto, child, grandchild));
+        properties.getHierarchy().setMaxDepth(1);
+        try {
+            assertThrows(IllegalArgumentException.class, () -> repository.findDescendants("123", null));
+            assertThrows(IllegalArgumentException.class, () -> repository.findAncestors("125", null));
+            assertEquals(List.of(new ContractorNodeDto(0, contractorDto), new ContractorNodeDto(1, child)),
+                repository.findDescendants("123", 1));
+            assertEquals(2, repository.findDescendants("124", null).size());
+        } finally {
+            properties.getHierarchy().setMaxDepth(maxDepth);
+        }
+    }
+
+    @Test
+    void saveOrUpdate_shouldRejectParentFromOwnGroup() {
+        ContractorDto child = contractorDto.toBuilder().id("124").parentId("123")
+            .inn("7701234568").ogrn("1027700132196").build();
+        repository.upsertAll(List.of(contractorDto, child));
+        List<String> closure = closureRows();
+
+        assertThrows(IllegalArgumentException.class,
+            () -> repository.saveOrUpdate(contractorDto.toBuilder().parentId("124").build()));
+        assertThrows(IllegalArgumentException.class, () -> repository.upsertAll(List.of(
+            contractorDto.toBuilder().id("126").parentId("127").inn("7701234570").ogrn("1027700132198").build(),
+            contractorDto.toBuilder().id("127").parentId("126").inn("7701234571").ogrn("1027700132199").build())));
+
+        assertNull(repository.findById("123").getParentId());
+        assertEquals(closure, closureRows());
+        assertEquals(closure, rebuiltClosureRows());
+    }
+
+    @Test
+    void upsertAll_shouldAddNewGroupInOneChunk() {
+        ContractorDto child = contractorDto.toBuilder().id("124").parentId("123")
+            .inn("7701234568").ogrn("1027700132196").build();
+        ContractorDto grandchild = contractorDto.toBuilder().id("125").parentId("124")
+            .inn("7701234569").ogrn("1027700132197").build();
+        repository.upsertAll(List.of(grandchild, child, contractorDto));
+
+        assertTrue(repository.isDescendant("125", "123"));
+        assertEquals(List.of("123>123:0", "123>124:1", "123>125:2", "124>124:0", "124>125:1", "125>125:0"),
+            closureRows());
+        assertEquals(closureRows(), rebuiltClosureRows());
+    }
+
+    @Test
+    void findDescendants_shouldRejectUnknownContractorAndBadDepth() {
+        assertThrows(EmptyResultDataAccessException.class, () -> repository.findDescendants("123", null));
+        assertThrows(IllegalArgumentException.class, () -> repository.findAncestors("123", 1000));
+    }
+
+    @Test
+    void isDescendant_shouldFollowParentChanges() {
+        ContractorDto child = contractorDto.toBuilder().id("124").parentId("123")
+            .inn("7701234568").ogrn("1027700132196").build();
+        ContractorDto grandchild = contractorDto.toBuilder().id("125").parentId("124")
+            .inn("7701234569").ogrn("1027700132197").build();
+        repository.saveOrUpdate(contractorDto);
+        repository.saveOrUpdate(child);
+        repository.saveOrUpdate(grandchild);
+
+        assertTrue(repository.isDescendant("125", "123"));
+        assertFalse(repository.isDescendant("123", "125"));
+        assertFalse(repository.isDescendant("123", "123"));
+
+        repository.saveOrUpdate(child.toBuilder().parentId(null).build());
+        assertFalse(repository.isDescendant("125", "123"));
+        assertTrue(repository.isDescendant("125", "124"));
+
+        repository.upsertAll(List.of(child));
+        assertTrue(repository.isDescendant("125", "123"));
+    }
+
+    @Test
+    void isDescendant_shouldDetachOnDeleteAndReattachOnRestore() {
+        ContractorDto child = contractorDto.toBuilder().id("124").parentId("123")
+            .inn("7701234568").ogrn("1027700132196").build();
+        ContractorDto grandchild = contractorDto.toBuilder().id("125").parentId("124")
+            .inn("7701234569").ogrn("1027700132197").build();
+        repository.upsertAll(List.of(contractorDto, child, grandchild));
+
+        repository.logicalDelete(child.getId());
+        assertFalse(repository.isDescendant("125", "123"));
+        assertFalse(repository.isDescendant("125", "124"));
+
+        repository.saveOrUpdate(child);
+        assertTrue(repository.isDescendant("125", "123"));
+        assertEquals(closureRows(), rebuiltClosureRows());
+    }
+
+    private List<String> closureRows() {
+        return jdbcTemplate.getJdbcTemplate().queryForList(
+            "SELECT ancestor_id || '>' || descendant_id || ':' || depth FROM contractor_closure ORDER BY 1", String.class);
+    }
+
+    private List<String> rebuiltClosureRows() {
+        closureRepository.rebuild();
+        return closureRows();
+    }
+
+    @Test
+    void searchPage_shouldReturnTotalAndFacetsForWholeFilter() {
+        ContractorDto second = contractorDto.toBuilder().id("124").name("ООО Василек").industry(null)
+            .inn("7701234568").ogrn("1027700132196").build();
+        ContractorDto third = contractorDto.toBuilder().id("125").name("ООО Лютик").country("BLR")
+            .inn("7701234569").ogrn("1027700132197").build();
+        repository.upsertAll(List.of(contractorDto, second, third));
+
+        ContractorSearchResultDto result = repository.searchPage(
+            ContractorSearch.builder().limit(2).offset(0).build(), true, true, false);
+
+        assertEquals(List.of(second, third), result.getItems());
+        assertEquals(PageToken.of(third).encode(), result.getNextPageToken());
+        assertEquals(3L, result.getTotal());
+        assertEquals(CountMode.EXACT, result.getCountMode());
+        assertEquals(List.of(
+                FacetDto.builder().id("RUS").name("Российская Федерация").count(2).build(),
+                FacetDto.builder().id("BLR").name("Беларусь").count(1).build()),
+            result.getFacets().getCountries());
+        assertEquals(2, result.getFacets().getIndustries().stream()
+            .filter(facet -> "5".equals(facet.getId())).findFirst().orElseThrow().getCount());
+        assertEquals(1, result.getFacets().getIndustries().stream()
+            .filter(facet -> facet.getId() == null).findFirst().orElseThrow().getCount());
+    }
+
+    @Test
+    void searchPage_shouldSkipAggregatesWhenNotRequested() {
+        repository.saveOrUpdate(contractorDto);
+
+        ContractorSearchResultDto result = repository.searchPage(
+            ContractorSearch.builder().limit(10).offset(0).build(), false, false, false);
+
+        assertEquals(List.of(contractorDto), result.getItems());
+        assertNull(result.getTotal());
+        assertNull(result.getFacets());
+        assertNull(result.getNextPageToken());
+    }
+
+    @Test
+    void searchPage_shouldCountExactlyBelowThresholdAndEstimateAbove() {
+        repository.saveOrUpdate(contractorDto);
+        ContractorSearch contractorSearch = ContractorSearch.builder().limit(10).offset(0).build();
+
+        ContractorSearchResultDto exact = repository.searchPage(contractorSearch, true, false, false);
+        assertEquals(1L, exact.getTotal());
+        assertEquals(CountMode.EXACT, exact.getCountMode());
+
+        long threshold = properties.getSearch().getExactCountThreshold();
+        properties.getSearch().setExactCountThreshold(0);
+        try {
+            assertEquals(CountMode.ESTIMATED,
+                repository.searchPage(contractorSearch, true, false, false).getCountMode());
+            assertEquals(CountMode.EXACT, repository.searchPage(contractorSearch, true, false, true).getCountMode());
+        } finally {
+            properties.getSearch().setExactCountThreshold(threshold);
+        }
+    }
+
+    @Test
+    void archiveBatch_shouldMoveLongDeletedContractorsWithoutChildren() {
+        ContractorDto child = contractorDto.toBuilder().id("124").parentId("123")
+            .inn("7701234568").ogrn("1027700132196").build();
+        ContractorDto orphan = contractorDto.toBuilder().id("125")
+            .inn("7701234569").ogrn("1027700132197").build();
+        repository.upsertAll(List.of(contractorDto, child, orphan));
+        repository.logicalDelete(contractorDto.getId());
+        repository.logicalDelete(orphan.getId());
+        jdbcTemplate.getJdbcTemplate().execute("UPDATE contractor SET modify_date = now() - interval '2 years'");
+
+        assertEquals(0, archiveRepository.archiveBatch(LocalDateTime.now().minusYears(3), 10));
+        assertEquals(1, archiveRepository.archiveBatch(LocalDateTime.now().minusYears(1), 10));
+
+        assertEquals(List.of("123", "124"), jdbcTemplate.getJdbcTemplate()
+            .queryForList("SELECT id FROM contractor ORDER BY id", String.class));
+        assertEquals(List.of("125"), jdbcTemplate.getJdbcTemplate()
+            .queryForList("SELECT id FROM contractor_archive", String.class));
+    }
+
+    @Test
+    void archiveBatch_shouldKeepEveryArchivedCopyOfSameContractor() {
+        LocalDateTime cutoff = LocalDateTime.now().minusYears(1);
+        ContractorDto renamed = contractorDto.toBuilder().name("ООО Василек").build();
+        for (ContractorDto copy : List.of(contractorDto, renamed)) {
+            repository.saveOrUpdate(copy);
+            repository.logicalDelete(copy.getId());
+            jdbcTemplate.getJdbcTemplate().execute("UPDATE contractor SET modify_date = now() - interval '2 years'");
+            assertEquals(1, archiveRepository.archiveBatch(cutoff, 10));
+        }
+
+        assertEquals(0, jdbcTemplate.getJdbcTemplate().queryForObject("SELECT count(*) FROM contractor", Integer.class));
+        assertEquals(List.of("ООО Ромашка", "ООО Василек"), jdbcTemplate.getJdbcTemplate()
+            .queryForList("SELECT name FROM contractor_archive WHERE id = '123' ORDER BY archive_id", String.class));
+    }
+
+    @Test
+    void findVersion_shouldChangeOnUpdateAndMatchFullRead() {
+        repository.saveOrUpdate(contractorDto);
+        long version = repository.findVersion(contractorDto.getId());
+        assertEquals(version, repository.findVersionedById(contractorDto.getId()).getVersion());
+
+        repository.saveOrUpdate(contractorDto.toBuilder().name("ООО Василек").build());
+
+        assertNotEquals(version, repository.findVersion(contractorDto.getId()));
+        assertThrows(EmptyResultDataAccessException.class, () -> repository.findVersion("404"));
+    }
+
+    @Test
+    void findChanges_shouldReturnWritesInOrderAndResumeFromCursor() {
+        ContractorDto child = contractorDto.toBuilder().id("124").parentId("123")
+            .inn("7701234568").ogrn("1027700132196").build();
+        repository.saveOrUpdate(contractorDto);
+        repository.upsertAll(List.of(contractorDto.toBuilder().name("ООО Василек").build(), child));
+
+        ContractorChangesDto first = changeRepository.findChanges(null, 2);
+        assertEquals(List.of("INSERT", "UPDATE"), first.getChanges().stream().map(ContractorChangeDto::getOperation).toList());
+        assertEquals("ООО Василек", first.getChanges().getFirst().getContractor().getName());
+
+        repository.logicalDelete(child.getId());
+
+        ContractorChangesDto second = changeRepository.findChanges(first.getNextCursor(), 10);
+        assertEquals(List.of("124", "124"), second.getChanges().stream().map(ContractorChangeDto::getContractorId).toList());
+        assertEquals(List.of("INSERT", "DELETE"), second.getChanges().stream().map(ContractorChangeDto::getOperation).toList());
+        assertNull(second.getChanges().getLast().getContractor());
+
+        ContractorChangesDto empty = changeRepository.findChanges(second.getNextCursor(), 10);
+        assertTrue(empty.getChanges().isEmpty());
+        assertEquals(second.getNextCursor(), empty.getNextCursor());
+        assertThrows(IllegalArgumentException.class, () -> changeRepository.findChanges("bad", 10));
+        assertThrows(IllegalArgumentException.class, () -> changeRepository.findChanges(null, 0));
+    }
+
+    @Test
+    void update_shouldApplyOnlyMatchingVersion() {
+        long version = repository.saveOrUpdate(contractorDto);
+        ContractorDto renamed = contractorDto.toBuilder().name("ООО Василек").build();
+
+        long updated = repository.update(renamed, version);
+        assertEquals(updated, repository.findVersion(contractorDto.getId()));
+        assertEquals(renamed, repository.findById(contractorDto.getId()));
+
+        assertThrows(OptimisticLockingFailureException.class,
+            () -> repository.update(contractorDto.toBuilder().name("ООО Лютик").build(), version));
+        assertEquals(renamed, repository.findById(contractorDto.getId()));
+
+        repository.logicalDelete(contractorDto.getId());
+        assertThrows(OptimisticLockingFailureException.class, () -> repository.update(renamed, updated));
+    }
+
+    @Test
+    void search_shouldRecordQueryTimeAndRowsByShape() {
+        repository.saveOrUpdate(contractorDto);
+        ContractorSearch contractorSearch = ContractorSearch.builder().country("Росс").searchFilter("Ромашка")
+            .limit(10).offset(0).build();
+        Timer timer = meterRegistry.timer("contractor.db.query",
+            "query", "contractor.search", "shape", "text,country:offset", "outcome", "success");
+        DistributionSummary rows = meterRegistry.summary("contractor.db.query.rows",
+            "query", "contractor.search", "shape", "text,country:offset");
+        long count = timer.count();
+        double totalRows = rows.totalAmount();
+
+        repository.search(contractorSearch);
+
+        assertEquals(count + 1, timer.count());
+        assertEquals(totalRows + 1, rows.totalAmount());
+    }
+
+    @Test
+    void search_shouldRecordSlowQueryWithRedactedParamsAndExplainOnDemand() {
+        repository.saveOrUpdate(contractorDto);
+        ContractorSearch contractorSearch = ContractorSearch.builder().searchFilter("Ромашка").limit(10).offset(0).build();
+        Duration threshold = properties.getSlowQuery().getThreshold();
+        properties.getSlowQuery().setThreshold(Duration.ZERO);
+        slowQueryRecorder.clear();
+        try {
+            repository.search(contractorSearch);
+        } finally {
+            properties.getSlowQuery().setThreshold(threshold);
+        }
+
+        SlowQueryDto slowQuery = slowQueryRecorder.findAll().stream()
+            .filter(query -> query.getQuery().equals("contractor.search"))
+            .findFirst()
+            .orElseThrow();
+        assertEquals("text:offset", slowQuery.getShape());
+        assertEquals("<text:9>", slowQuery.getParams().get("searchText"));
+        assertEquals("10", slowQuery.getParams().get("limit"));
+        assertNull(slowQuery.getPlan());
+
+        String plan = slowQueryRecorder.explain(slowQuery.getId()).orElseThrow().getPlan();
+        assertTrue(plan.contains("Execution Time"));
+    }
+
+    @Test
+    void search_shouldReuseSqlTextForSameShape() {
+        repository.saveOrUpdate(contractorDto);
+        ContractorSearch first = ContractorSearch.builder().searchFilter("Ромашка").country("Росс").limit(10).offset(0).build();
+        ContractorSearch second = first.toBuilder().searchFilter("Василек").country("Беларусь").offset(20).build();
+        Counter shapeCounter = meterRegistry.counter("contractor.search.shape", "shape", "text,country:offset");
+        double requests = shapeCounter.count();
+
+        SearchQuery firstQuery = searchQueryBuilder.build(first).orElseThrow();
+        SearchQuery secondQuery = searchQueryBuilder.build(second).orElseThrow();
+
+        assertSame(firstQuery.getSql(), secondQuery.getSql());
+        assertEquals("%Василек%", secondQuery.getParams().getValue("searchText"));
+        assertEquals(20, secondQuery.getParams().getValue("offset"));
+        assertNotSame(firstQuery.getSql(), searchQueryBuilder.build(first.toBuilder().pageToken(
+            PageToken.of(contractorDto).encode()).build()).orElseThrow().getSql());
+        assertEquals(requests + 3, shapeCounter.count());
+        assertEquals(List.of(contractorDto), repository.search(first));
+    }
+
+    @Test
+    void search_shouldServeEquivalentFiltersFromCacheUntilWrite() {
+        repository.saveOrUpdate(contractorDto);
+        ContractorSearch contractorSearch = ContractorSearch.builder().searchFilter("Ромашка").country("Росс").limit(10).build();
+        Timer timer = meterRegistry.timer("contractor.db.query",
+            "query", "contractor.search", "shape", "text,country:offset", "outcome", "success");
+        long count = timer.count();
+
+        assertEquals(List.of(contractorDto), repository.search(contractorSearch));
+        assertEquals(List.of(contractorDto), repository.search(contractorSearch.toBuilder()
+            .searchFilter("  ромашка ").country("РОСС").offset(0).build()));
+        assertEquals(count + 1, timer.count());
+
+        repository.logicalDelete(contractorDto.getId());
+        assertEquals(List.of(), repository.search(contractorSearch));
+        assertEquals(count + 2, timer.count());
+    }
+
+    @Test
+    void search_shouldBoundPageWithoutLimit() {
+        List<ContractorDto> contractors = IntStream.rangeClosed(1, ContractorSearch.DEFAULT_LIMIT + 1)
+            .mapToObj(i -> contractorDto.toBuilder().id("C" + i).inn(String.format("%010d", i))
+                .ogrn(String.format("%013d", i)).build())
+            .toList();
+        repository.upsertAll(contractors);
+
+        assertEquals(ContractorSearch.DEFAULT_LIMIT, repository.search(ContractorSearch.builder().build()).size());
+        assertThrows(IllegalArgumentException.class,
+            () -> repository.search(ContractorSearch.builder().limit(ContractorSearch.MAX_LIMIT + 1).build()));
+        assertThrows(IllegalArgumentException.class,
+            () -> repository.search(ContractorSearch.builder().limit(10).offset(-1).build()));
+    }
+
 }
@@ -5,6 +5,7 @@ import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import java.util.List;
+import org.annill.contractor.cache.ReferenceDataCache;
 import org.annill.contractor.dto.CountryDto;
 import org.annill.contractor.repository.CountryRepository;
 import org.junit.jupiter.api.BeforeEach;
@@ -34,6 +35,9 @@ class CountryRepositoryTest {
     @Autowired
     private NamedParameterJdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private ReferenceDataCache referenceDataCache;
+
     @DynamicPropertySource
     static void configureProperties(DynamicPropertyRegistry registry) {
         registry.add("spring.datasource.url", postgres::getJdbcUrl);
@@ -46,6 +50,7 @@ class CountryRepositoryTest {
     @BeforeEach
     void clearDatabase() {
         jdbcTemplate.getJdbcTemplate().execute("TRUNCATE TABLE country cascade");
+        referenceDataCache.refresh();
     }
 
     @Autowired
@@ -102,6 +107,7 @@ class CountryRepositoryTest {
     @Test
     void findAll_shouldReturnAllCountry() {
         jdbcTemplate.getJdbcTemplate().execute("TRUNCATE TABLE country  CASCADE");
+        referenceDataCache.refresh();
         CountryDto secondCountryDto = CountryDto.builder().id("RU").name("Россия").build();
         assertThrows(EmptyResultDataAccessException.class,
             () -> repository.findById(countryDto.getId()));
@@ -113,4 +119,15 @@ class CountryRepositoryTest {
         assertEquals(secondCountryDto, newFound.get(1));
     }
 
+    @Test
+    void findById_shouldBeServedFromCacheUntilRefresh() {
+        repository.saveOrUpdate(countryDto);
+        jdbcTemplate.getJdbcTemplate().execute("UPDATE country SET name = 'Другое' WHERE id = 'Al'");
+
+        assertEquals(countryDto, repository.findById(countryDto.getId()));
+
+        referenceDataCache.refresh();
+        assertEquals("Другое", repository.findById(countryDto.getId()).getName());
+    }
+
 }
@@ -0,0 +1,82 @@
+package org.annill.contractor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.annill.contractor.cache.ReferenceData;
+import org.annill.contractor.cache.ReferenceDataCache;
+import org.annill.contractor.cache.SingleFlight;
+import org.annill.contractor.config.ContractorProperties;
+import org.annill.contractor.converter.CountryConverter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+@ExtendWith(MockitoExtension.class)
+class ReferenceDataCacheTest {
+
+    private static final int CALLERS = 20;
+
+    @Mock
+    private NamedParameterJdbcTemplate jdbcTemplate;
+
+    @Mock
+    private JdbcTemplate plainJdbcTemplate;
+
+    private final ContractorProperties properties = new ContractorProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private ReferenceDataCache cache;
+
+    @BeforeEach
+    void setUp() {
+        when(jdbcTemplate.getJdbcTemplate()).thenReturn(plainJdbcTemplate);
+        when(jdbcTemplate.query(anyString(), any(RowMapper.class))).thenAnswer(invocation -> {
+            loads.incrementAndGet();
+            Thread.sleep(50);
+            return List.of();
+        });
+        cache = new ReferenceDataCache(jdbcTemplate, new CountryConverter(), properties, meterRegistry,
+            new SingleFlight(properties, meterRegistry));
+    }
+
+    @Test
+    void get_shouldLoadOnceForConcurrentMisses() throws Exception {
+        assertEquals(1, concurrentGets());
+    }
+
+    @Test
+    void get_shouldLoadOnceForConcurrentMissesWithoutSingleFlight() throws Exception {
+        properties.getSingleFlight().setEnabled(false);
+        assertEquals(1, concurrentGets());
+    }
+
+    private int concurrentGets() throws Exception {
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<ReferenceData>> results = new ArrayList<>();
+            for (int i = 0; i < CALLERS; i++) {
+                results.add(executor.submit(cache::get));
+            }
+            for (Future<ReferenceData> result : results) {
+                result.get(5, TimeUnit.SECONDS);
+            }
+        }
+        return loads.get();
+    }
+
+}
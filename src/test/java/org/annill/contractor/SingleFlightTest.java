@@ -0,0 +1,148 @@
+package org.annill.contractor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.annill.contractor.cache.SingleFlight;
+import org.annill.contractor.config.ContractorProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.EmptyResultDataAccessException;
+
+class SingleFlightTest {
+
+    private static final int CALLERS = 50;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ContractorProperties properties = new ContractorProperties();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private SingleFlight singleFlight;
+    private Counter coalesced;
+
+    @BeforeEach
+    void setUp() {
+        singleFlight = new SingleFlight(properties, meterRegistry);
+        coalesced = meterRegistry.counter("contractor.coalesced.requests", "operation", "contractor.find_by_id");
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void execute_shouldShareOneCallBetweenConcurrentCallers() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        List<Future<String>> results = startCallers(() -> {
+            calls.incrementAndGet();
+            await(release);
+            return "ООО Ромашка";
+        });
+
+        awaitCoalesced(CALLERS - 1);
+        release.countDown();
+
+        for (Future<String> result : results) {
+            assertEquals("ООО Ромашка", result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, calls.get());
+        assertEquals(CALLERS - 1, coalesced.count());
+    }
+
+    @Test
+    void execute_shouldPassLeaderErrorToWaitingCallers() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        EmptyResultDataAccessException error = new EmptyResultDataAccessException(1);
+        List<Future<String>> results = startCallers(() -> {
+            await(release);
+            throw error;
+        });
+
+        awaitCoalesced(CALLERS - 1);
+        release.countDown();
+
+        for (Future<String> result : results) {
+            ExecutionException ex = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+            assertSame(error, ex.getCause());
+        }
+    }
+
+    @Test
+    void execute_shouldCallItselfWhenLeaderExceedsWaitTimeout() throws Exception {
+        properties.getSingleFlight().setWaitTimeout(Duration.ofMillis(50));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> leader = executor.submit(() -> singleFlight.execute("contractor.find_by_id", "123", () -> {
+            started.countDown();
+            await(release);
+            return "старое значение";
+        }));
+        started.await(5, TimeUnit.SECONDS);
+
+        assertEquals("новое значение", singleFlight.execute("contractor.find_by_id", "123", () -> "новое значение"));
+        assertEquals(1, meterRegistry.counter("contractor.coalesced.timeouts", "operation", "contractor.find_by_id").count());
+
+        release.countDown();
+        assertEquals("старое значение", leader.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void execute_shouldNotJoinFlightAfterForget() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> leader = executor.submit(() -> singleFlight.execute("contractor.find_by_id", "123", () -> {
+            started.countDown();
+            await(release);
+            return "до записи";
+        }));
+        started.await(5, TimeUnit.SECONDS);
+
+        singleFlight.forget("contractor.find_by_id", "123");
+
+        assertEquals("после записи", singleFlight.execute("contractor.find_by_id", "123", () -> "после записи"));
+        assertEquals(0, coalesced.count());
+        release.countDown();
+        assertEquals("до записи", leader.get(5, TimeUnit.SECONDS));
+    }
+
+    private List<Future<String>> startCallers(Supplier<String> call) {
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            results.add(executor.submit(() -> singleFlight.execute("contractor.find_by_id", "123", call)));
+        }
+        return results;
+    }
+
+    private void awaitCoalesced(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (coalesced.count() < count && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(ex);
+        }
+    }
+
+}
@@ -0,0 +1,74 @@
+package org.annill.contractor.benchmark;
+
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+/**
+ * Общая основа для нагрузочных замеров на реальном PostgreSQL. Замеры не входят в обычный прогон тестов и запускаются
+ * профилем {@code mvn test -Pbenchmark}, объем данных задается свойством {@code -Dbenchmark.contractors}
+ */
+@Testcontainers
+@SpringBootTest(properties = "contractor.search-cache.enabled=false")
+public abstract class AbstractContractorBenchmark {
+
+    private static final String SEED_CONTRACTORS_SQL = """
+        INSERT INTO contractor (id, name, name_full, inn, ogrn, country, industry, org_form, is_active)
+        SELECT 'B' || lpad(g::text, 11, '0'),
+               'Контрагент ' || md5(g::text),
+               'Общество с ограниченной ответственностью ' || md5(g::text),
+               lpad(g::text, 10, '0'),
+               lpad(g::text, 13, '0'),
+               (ARRAY ['RUS', 'BLR', 'KAZ', 'ARM', 'CHN', 'DEU'])[g % 6 + 1],
+               g % 105 + 1,
+               g % 150 + 1,
+               g % 10 <> 0
+        FROM generate_series(1, :count) AS g""";
+
+    @Container
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16")
+        .withDatabaseName("contractor")
+        .withUsername("myuser")
+        .withPassword("secret");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+
+    @Autowired
+    protected NamedParameterJdbcTemplate jdbcTemplate;
+
+    protected static int contractorCount() {
+        return Integer.getInteger("benchmark.contractors", 1_000_000);
+    }
+
+    protected void seedContractors(int count) {
+        jdbcTemplate.getJdbcTemplate().execute("TRUNCATE TABLE contractor CASCADE");
+        jdbcTemplate.update(SEED_CONTRACTORS_SQL, Map.of("count", count));
+        jdbcTemplate.getJdbcTemplate().execute("VACUUM ANALYZE contractor");
+    }
+
+    /**
+     * Среднее время одного вызова в микросекундах после прогрева
+     */
+    protected static double averageMicros(Runnable action, int warmup, int iterations) {
+        for (int i = 0; i < warmup; i++) {
+            action.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            action.run();
+        }
+        return (System.nanoTime() - start) / 1_000.0 / iterations;
+    }
+
+}
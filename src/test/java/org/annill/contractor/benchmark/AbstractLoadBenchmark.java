@@ -0,0 +1,100 @@
+package org.annill.contractor.benchmark;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+/**
+ * Нагрузочный замер HTTP-поиска контрагентов при большом числе одновременных клиентов. Режим обработки запросов
+ * задается в наследниках
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "contractor.search-cache.enabled=false")
+abstract class AbstractLoadBenchmark extends AbstractContractorBenchmark {
+
+    private static final int CLIENTS = Integer.getInteger("benchmark.load.clients", 2_000);
+
+    private static final int REQUESTS_PER_CLIENT = Integer.getInteger("benchmark.load.requests", 20);
+
+    private static final int SEARCH_CONTRACTORS = 100_000;
+
+    @LocalServerPort
+    private int port;
+
+    @BeforeAll
+    void seed() {
+        seedContractors(SEARCH_CONTRACTORS);
+    }
+
+    @Test
+    void concurrentSearch() throws Exception {
+        HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .build();
+        URI searchUri = URI.create("http://localhost:" + port + "/contractor/search");
+        long[] latencies = new long[CLIENTS * REQUESTS_PER_CLIENT];
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+
+        long start = System.nanoTime();
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < CLIENTS; i++) {
+                futures.add(clients.submit(() -> {
+                    for (int request = 0; request < REQUESTS_PER_CLIENT; request++) {
+                        long requestStart = System.nanoTime();
+                        int status = send(client, searchUri);
+                        latencies[next.getAndIncrement()] = System.nanoTime() - requestStart;
+                        if (status != 200) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        Arrays.sort(latencies);
+        System.out.printf("%s: clients %d, requests %d, errors %d, %.0f req/s, p50 %.1f ms, p99 %.1f ms%n",
+            getClass().getSimpleName(), CLIENTS, latencies.length, errors.get(), latencies.length / seconds,
+            percentileMillis(latencies, 0.50), percentileMillis(latencies, 0.99));
+    }
+
+    private static int send(HttpClient client, URI searchUri) {
+        String body = "{\"searchFilter\":\"" + ThreadLocalRandom.current().nextInt(1, 10_000)
+            + "\",\"limit\":20,\"offset\":0}";
+        HttpRequest request = HttpRequest.newBuilder(searchUri)
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(body))
+            .build();
+        try {
+            return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (Exception ex) {
+            return -1;
+        }
+    }
+
+    private static double percentileMillis(long[] sortedNanos, double percentile) {
+        return sortedNanos[(int) Math.ceil(percentile * sortedNanos.length) - 1] / 1e6;
+    }
+
+}
@@ -0,0 +1,59 @@
+package org.annill.contractor.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.stream.IntStream;
+import org.annill.contractor.dto.ContractorDto;
+import org.annill.contractor.repository.ContractorRepository;
+import org.annill.contractor.service.ContractorBatchService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Сравнение скорости загрузки реестра по одному контрагенту и пакетами
+ */
+class ContractorBatchSaveBenchmark extends AbstractContractorBenchmark {
+
+    @Autowired
+    private ContractorRepository repository;
+
+    @Autowired
+    private ContractorBatchService batchService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void singleVersusBatch() throws Exception {
+        int count = Integer.getInteger("benchmark.batch.records", 20_000);
+        List<ContractorDto> contractors = IntStream.rangeClosed(1, count)
+            .mapToObj(i -> ContractorDto.builder()
+                .id("L" + i)
+                .name("Контрагент " + i)
+                .nameFull("Общество с ограниченной ответственностью Контрагент " + i)
+                .inn(String.format("%010d", i))
+                .ogrn(String.format("%013d", i))
+                .country("RUS")
+                .industry(i % 105 + 1)
+                .orgForm(i % 150 + 1)
+                .build())
+            .toList();
+        byte[] body = objectMapper.writeValueAsBytes(contractors);
+
+        seedContractors(0);
+        long start = System.nanoTime();
+        contractors.forEach(repository::saveOrUpdate);
+        double singleSeconds = (System.nanoTime() - start) / 1e9;
+
+        seedContractors(0);
+        start = System.nanoTime();
+        batchService.saveAll(new ByteArrayInputStream(body));
+        double batchSeconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%-12s %12s%n", "mode", "rows/s");
+        System.out.printf("%-12s %12.0f%n", "single", count / singleSeconds);
+        System.out.printf("%-12s %12.0f%n", "batch", count / batchSeconds);
+    }
+
+}
@@ -0,0 +1,8 @@
+package org.annill.contractor.benchmark;
+
+import org.springframework.test.context.TestPropertySource;
+
+@TestPropertySource(properties = {"spring.threads.virtual.enabled=false", "server.tomcat.threads.max=200"})
+class PlatformThreadsLoadBenchmark extends AbstractLoadBenchmark {
+
+}
@@ -0,0 +1,63 @@
+package org.annill.contractor.benchmark;
+
+import java.util.List;
+import java.util.Map;
+import org.annill.contractor.dto.ContractorDto;
+import org.annill.contractor.filter.ContractorSearch;
+import org.annill.contractor.filter.PageToken;
+import org.annill.contractor.repository.ContractorRepository;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Сравнение постраничного поиска через OFFSET и через токен продолжения на разной глубине страниц
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class SearchPaginationBenchmark extends AbstractContractorBenchmark {
+
+    private static final int PAGE_SIZE = 50;
+
+    private static final String ROW_AT_POSITION_SQL = """
+        SELECT id, name FROM contractor
+        WHERE is_active = true
+        ORDER BY name, id
+        OFFSET :position LIMIT 1""";
+
+    @Autowired
+    private ContractorRepository repository;
+
+    @BeforeAll
+    void seed() {
+        seedContractors(contractorCount());
+    }
+
+    @Test
+    void offsetVersusKeyset() {
+        int activeCount = contractorCount() * 9 / 10;
+        System.out.printf("%12s %16s %16s%n", "offset", "offset, us", "keyset, us");
+        for (int depth : List.of(0, 1_000, 10_000, 100_000, 500_000, 850_000)) {
+            if (depth >= activeCount) {
+                continue;
+            }
+            ContractorSearch offsetSearch = ContractorSearch.builder().limit(PAGE_SIZE).offset(depth).build();
+            ContractorSearch keysetSearch = ContractorSearch.builder().limit(PAGE_SIZE)
+                .pageToken(tokenBefore(depth)).build();
+
+            double offsetMicros = averageMicros(() -> repository.search(offsetSearch), 3, 10);
+            double keysetMicros = averageMicros(() -> repository.search(keysetSearch), 3, 10);
+            System.out.printf("%12d %16.0f %16.0f%n", depth, offsetMicros, keysetMicros);
+        }
+    }
+
+    private String tokenBefore(int depth) {
+        if (depth == 0) {
+            return null;
+        }
+        Map<String, Object> row = jdbcTemplate.queryForMap(ROW_AT_POSITION_SQL, Map.of("position", depth - 1));
+        ContractorDto last = ContractorDto.builder().id((String) row.get("id")).name((String) row.get("name")).build();
+        return PageToken.of(last).encode();
+    }
+
+}
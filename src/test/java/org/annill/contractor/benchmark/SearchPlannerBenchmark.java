@@ -0,0 +1,64 @@
+package org.annill.contractor.benchmark;
+
+import java.util.Map;
+import org.annill.contractor.entity.Industry;
+import org.annill.contractor.filter.ContractorSearch;
+import org.annill.contractor.repository.ContractorRepository;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Сравнение поиска с соединением справочников и поиска по заранее разрешенным id справочников
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class SearchPlannerBenchmark extends AbstractContractorBenchmark {
+
+    private static final String JOIN_SEARCH_SQL = """
+        SELECT c.*
+        FROM contractor c
+        LEFT JOIN country co ON c.country = co.id AND co.is_active = true
+        LEFT JOIN industry ind ON c.industry = ind.id AND ind.is_active = true
+        LEFT JOIN org_form o ON c.org_form = o.id AND o.is_active = true
+        WHERE c.is_active = true""";
+
+    private static final String INDUSTRY_NAME = "Авиастроение";
+
+    @Autowired
+    private ContractorRepository repository;
+
+    @BeforeAll
+    void seed() {
+        seedContractors(contractorCount());
+    }
+
+    @Test
+    void joinVersusResolvedIds() {
+        System.out.printf("%-28s %14s %14s%n", "filter", "join, us", "ids, us");
+
+        compare("none", JOIN_SEARCH_SQL, Map.of(), ContractorSearch.builder());
+        compare("country", JOIN_SEARCH_SQL + " AND co.name ILIKE :country",
+            Map.of("country", "%Казахстан%"), ContractorSearch.builder().country("Казахстан"));
+        compare("industry", JOIN_SEARCH_SQL + " AND ind.name = :industry",
+            Map.of("industry", INDUSTRY_NAME),
+            ContractorSearch.builder().industry(Industry.builder().name(INDUSTRY_NAME).build()));
+        compare("country+industry+orgForm", JOIN_SEARCH_SQL
+                + " AND co.name ILIKE :country AND ind.name = :industry AND o.name ILIKE :orgForm",
+            Map.of("country", "%Казахстан%", "industry", INDUSTRY_NAME, "orgForm", "%общество%"),
+            ContractorSearch.builder().country("Казахстан").industry(Industry.builder().name(INDUSTRY_NAME).build())
+                .orgForm("общество"));
+    }
+
+    private void compare(String name, String joinSql, Map<String, Object> joinParams,
+        ContractorSearch.ContractorSearchBuilder search) {
+        String pagedJoinSql = joinSql + " ORDER BY c.name, c.id LIMIT 50 OFFSET 0";
+        ContractorSearch contractorSearch = search.limit(50).offset(0).build();
+
+        double joinMicros = averageMicros(
+            () -> jdbcTemplate.queryForList(pagedJoinSql, joinParams), 5, 50);
+        double idsMicros = averageMicros(() -> repository.search(contractorSearch), 5, 50);
+        System.out.printf("%-28s %14.0f %14.0f%n", name, joinMicros, idsMicros);
+    }
+
+}
@@ -0,0 +1,45 @@
+package org.annill.contractor.benchmark;
+
+import java.util.Map;
+import org.annill.contractor.filter.ContractorSearch;
+import org.annill.contractor.repository.ContractorRepository;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Сравнение поиска текста короче трех символов по подстроке через ILIKE и по началу наименования через индекс
+ * lower(name) text_pattern_ops
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class ShortTextSearchBenchmark extends AbstractContractorBenchmark {
+
+    private static final String SUBSTRING_SEARCH_SQL = """
+        SELECT c.id, c.parent_id, c.name, c.name_full, c.inn, c.ogrn, c.country, c.industry, c.org_form
+        FROM contractor c
+        WHERE c.is_active = true AND (c.name ILIKE :searchText OR c.name_full ILIKE :searchText)
+        ORDER BY c.name, c.id LIMIT 50 OFFSET 0""";
+
+    @Autowired
+    private ContractorRepository repository;
+
+    @BeforeAll
+    void seed() {
+        seedContractors(contractorCount());
+    }
+
+    @Test
+    void substringVersusPrefix() {
+        System.out.printf("%-10s %16s %16s%n", "text", "substring, us", "prefix, us");
+        for (String text : new String[] {"ко", "ab", "я"}) {
+            ContractorSearch search = ContractorSearch.builder().searchFilter(text).limit(50).offset(0).build();
+
+            double substringMicros = averageMicros(
+                () -> jdbcTemplate.queryForList(SUBSTRING_SEARCH_SQL, Map.of("searchText", "%" + text + "%")), 3, 20);
+            double prefixMicros = averageMicros(() -> repository.search(search), 3, 20);
+            System.out.printf("%-10s %16.0f %16.0f%n", text, substringMicros, prefixMicros);
+        }
+    }
+
+}
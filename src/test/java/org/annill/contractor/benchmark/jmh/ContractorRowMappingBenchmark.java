@@ -0,0 +1,105 @@
+package org.annill.contractor.benchmark.jmh;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import javax.sql.rowset.CachedRowSet;
+import org.annill.contractor.dto.ContractorDto;
+import org.annill.contractor.entity.Contractor;
+import org.annill.contractor.repository.ContractorRowMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Чтение страницы результата поиска. {@code entityThenDto} повторяет прежний путь: {@code SELECT *} в
+ * {@link Contractor}, затем копия в {@link ContractorDto} и в новый список. {@code direct} — текущий
+ * {@link ContractorRowMapper}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContractorRowMappingBenchmark {
+
+    @Param({"20", "1000"})
+    private int rows;
+
+    private final ContractorRowMapper rowMapper = new ContractorRowMapper();
+    private CachedRowSet allColumns;
+    private CachedRowSet apiColumns;
+
+    @Setup
+    public void setUp() throws SQLException {
+        allColumns = ContractorRows.contractorRowSet(rows);
+        apiColumns = ContractorRows.apiRowSet(rows);
+    }
+
+    @Benchmark
+    public List<ContractorDto> entityThenDto() throws SQLException {
+        allColumns.beforeFirst();
+        List<Contractor> contractors = new ArrayList<>();
+        while (allColumns.next()) {
+            contractors.add(mapEntity(allColumns));
+        }
+        return contractors.stream()
+            .map(ContractorRowMappingBenchmark::toDto)
+            .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<ContractorDto> direct() throws SQLException {
+        apiColumns.beforeFirst();
+        List<ContractorDto> contractors = new ArrayList<>();
+        int rowNum = 0;
+        while (apiColumns.next()) {
+            contractors.add(rowMapper.mapRow(apiColumns, rowNum++));
+        }
+        return contractors;
+    }
+
+    private static Contractor mapEntity(ResultSet rs) throws SQLException {
+        return Contractor.builder()
+            .id(rs.getString("id"))
+            .parentId(rs.getString("parent_id"))
+            .name(rs.getString("name"))
+            .nameFull(rs.getString("name_full"))
+            .inn(rs.getString("inn"))
+            .ogrn(rs.getString("ogrn"))
+            .country(rs.getString("country"))
+            .industry(rs.getInt("industry"))
+            .orgForm(rs.getInt("org_form"))
+            .isActive(rs.getBoolean("is_active"))
+            .build();
+    }
+
+    /**
+     * Копия сущности в DTO, как делал удаленный ContractorConverter
+     */
+    private static ContractorDto toDto(Contractor entity) {
+        return ContractorDto.builder()
+            .id(entity.getId())
+            .parentId(entity.getParentId())
+            .name(entity.getName())
+            .nameFull(entity.getNameFull())
+            .inn(entity.getInn())
+            .ogrn(entity.getOgrn())
+            .country(entity.getCountry())
+            .industry(entity.getIndustry())
+            .orgForm(entity.getOrgForm()).build();
+    }
+
+}
@@ -0,0 +1,123 @@
+package org.annill.contractor.benchmark.jmh;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import javax.sql.rowset.RowSetProvider;
+import lombok.experimental.UtilityClass;
+import org.annill.contractor.dto.ContractorDto;
+import org.annill.contractor.repository.ContractorRowMapper;
+
+/**
+ * Данные для JMH-замеров: строки таблицы contractor в памяти вместо результата запроса к базе
+ */
+@UtilityClass
+public class ContractorRows {
+
+    private static final String[] CONTRACTOR_COLUMNS = {"id", "parent_id", "name", "name_full", "inn", "ogrn", "country",
+        "industry", "org_form", "create_date", "modify_date", "create_user_id", "modify_user_id", "is_active"};
+
+    private static final int[] CONTRACTOR_COLUMN_TYPES = {Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR,
+        Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.INTEGER, Types.INTEGER, Types.TIMESTAMP, Types.TIMESTAMP,
+        Types.VARCHAR, Types.VARCHAR, Types.BOOLEAN};
+
+    public static List<ContractorDto> dtos(int count) {
+        List<ContractorDto> contractors = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            contractors.add(dto(i));
+        }
+        return contractors;
+    }
+
+    private static final String[] API_COLUMNS = ContractorRowMapper.COLUMNS.split(", ");
+
+    private static final int[] API_COLUMN_TYPES = {Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR,
+        Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.INTEGER, Types.INTEGER};
+
+    /**
+     * Колонки {@link ContractorRowMapper#COLUMNS}, как их выбирает репозиторий
+     */
+    public static CachedRowSet apiRowSet(int count) throws SQLException {
+        CachedRowSet rowSet = emptyRowSet(API_COLUMNS, API_COLUMN_TYPES);
+        for (int i = 0; i < count; i++) {
+            ContractorDto contractor = dto(i);
+            rowSet.moveToInsertRow();
+            rowSet.updateString("id", contractor.getId());
+            rowSet.updateString("parent_id", contractor.getParentId());
+            rowSet.updateString("name", contractor.getName());
+            rowSet.updateString("name_full", contractor.getNameFull());
+            rowSet.updateString("inn", contractor.getInn());
+            rowSet.updateString("ogrn", contractor.getOgrn());
+            rowSet.updateString("country", contractor.getCountry());
+            rowSet.updateInt("industry", contractor.getIndustry());
+            rowSet.updateInt("org_form", contractor.getOrgForm());
+            rowSet.insertRow();
+            rowSet.moveToCurrentRow();
+        }
+        rowSet.beforeFirst();
+        return rowSet;
+    }
+
+    /**
+     * Все колонки таблицы contractor, как их возвращал {@code SELECT *}
+     */
+    public static CachedRowSet contractorRowSet(int count) throws SQLException {
+        CachedRowSet rowSet = emptyRowSet(CONTRACTOR_COLUMNS, CONTRACTOR_COLUMN_TYPES);
+        Timestamp createDate = Timestamp.valueOf(LocalDateTime.of(2024, 1, 1, 0, 0));
+        for (int i = 0; i < count; i++) {
+            ContractorDto contractor = dto(i);
+            rowSet.moveToInsertRow();
+            rowSet.updateString("id", contractor.getId());
+            rowSet.updateString("parent_id", contractor.getParentId());
+            rowSet.updateString("name", contractor.getName());
+            rowSet.updateString("name_full", contractor.getNameFull());
+            rowSet.updateString("inn", contractor.getInn());
+            rowSet.updateString("ogrn", contractor.getOgrn());
+            rowSet.updateString("country", contractor.getCountry());
+            rowSet.updateInt("industry", contractor.getIndustry());
+            rowSet.updateInt("org_form", contractor.getOrgForm());
+            rowSet.updateTimestamp("create_date", createDate);
+            rowSet.updateTimestamp("modify_date", createDate);
+            rowSet.updateString("create_user_id", "loader");
+            rowSet.updateString("modify_user_id", "loader");
+            rowSet.updateBoolean("is_active", true);
+            rowSet.insertRow();
+            rowSet.moveToCurrentRow();
+        }
+        rowSet.beforeFirst();
+        return rowSet;
+    }
+
+    static CachedRowSet emptyRowSet(String[] columns, int[] types) throws SQLException {
+        RowSetMetaDataImpl metaData = new RowSetMetaDataImpl();
+        metaData.setColumnCount(columns.length);
+        for (int i = 0; i < columns.length; i++) {
+            metaData.setColumnName(i + 1, columns[i]);
+            metaData.setColumnLabel(i + 1, columns[i]);
+            metaData.setColumnType(i + 1, types[i]);
+        }
+        CachedRowSet rowSet = RowSetProvider.newFactory().createCachedRowSet();
+        rowSet.setMetaData(metaData);
+        return rowSet;
+    }
+
+    private static ContractorDto dto(int i) {
+        return ContractorDto.builder()
+            .id("B%011d".formatted(i))
+            .parentId(i % 10 == 0 ? null : "B%011d".formatted(i - i % 10))
+            .name("Контрагент " + i)
+            .nameFull("Общество с ограниченной ответственностью «Контрагент " + i + "»")
+            .inn("%010d".formatted(i))
+            .ogrn("%013d".formatted(i))
+            .country("RUS")
+            .industry(i % 105 + 1)
+            .orgForm(i % 150 + 1)
+            .build();
+    }
+
+}
@@ -0,0 +1,111 @@
+package org.annill.contractor.benchmark.jmh;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.annill.contractor.cache.ReferenceData;
+import org.annill.contractor.cache.ReferenceDataCache;
+import org.annill.contractor.config.ContractorProperties;
+import org.annill.contractor.converter.CountryConverter;
+import org.annill.contractor.dto.CountryDto;
+import org.annill.contractor.entity.Industry;
+import org.annill.contractor.filter.ContractorSearch;
+import org.annill.contractor.filter.PageToken;
+import org.annill.contractor.repository.ContractorSearchQueryBuilder;
+import org.annill.contractor.repository.SearchQuery;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Сборка SQL поиска для типичных наборов фильтров. Справочники подставляются готовым снимком без обращения к базе.
+ * Текст SQL берется готовым по форме запроса, замер показывает стоимость разбора фильтра и связывания параметров
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContractorSearchQueryBuilderBenchmark {
+
+    private ContractorSearchQueryBuilder builder;
+    private ContractorSearch offsetPage;
+    private ContractorSearch textSearch;
+    private ContractorSearch referenceFilters;
+    private ContractorSearch keysetPage;
+
+    @Setup
+    public void setUp() {
+        ReferenceData referenceData = referenceData();
+        ReferenceDataCache referenceDataCache = new ReferenceDataCache(null, new CountryConverter(),
+            new ContractorProperties(), new SimpleMeterRegistry(), null) {
+            @Override
+            public ReferenceData get() {
+                return referenceData;
+            }
+        };
+        builder = new ContractorSearchQueryBuilder(referenceDataCache, new SimpleMeterRegistry());
+
+        offsetPage = ContractorSearch.builder().limit(20).offset(100).build();
+        textSearch = offsetPage.toBuilder().searchFilter("ромашка").build();
+        referenceFilters = offsetPage.toBuilder()
+            .country("росс")
+            .industry(Industry.builder().name("Отрасль 7").build())
+            .orgForm("общество")
+            .build();
+        String pageToken = new PageToken("Контрагент 100", "B00000000100").encode();
+        keysetPage = ContractorSearch.builder().limit(20).searchFilter("7701").pageToken(pageToken).build();
+    }
+
+    @Benchmark
+    public Optional<SearchQuery> offsetPage() {
+        return builder.build(offsetPage);
+    }
+
+    @Benchmark
+    public Optional<SearchQuery> textSearch() {
+        return builder.build(textSearch);
+    }
+
+    @Benchmark
+    public Optional<SearchQuery> referenceFilters() {
+        return builder.build(referenceFilters);
+    }
+
+    @Benchmark
+    public Optional<SearchQuery> keysetPage() {
+        return builder.build(keysetPage);
+    }
+
+    private static ReferenceData referenceData() {
+        List<CountryDto> countries = List.of(
+            CountryDto.builder().id("RUS").name("Российская Федерация").build(),
+            CountryDto.builder().id("BLR").name("Республика Беларусь").build(),
+            CountryDto.builder().id("KAZ").name("Республика Казахстан").build());
+        Map<String, CountryDto> countriesById = new HashMap<>();
+        countries.forEach(country -> countriesById.put(country.getId(), country));
+
+        Map<Integer, String> industries = new HashMap<>();
+        for (int i = 1; i <= 105; i++) {
+            industries.put(i, "Отрасль " + i);
+        }
+        Map<Integer, String> orgForms = new HashMap<>();
+        for (int i = 1; i <= 150; i++) {
+            orgForms.put(i, i % 3 == 0 ? "Общество с ограниченной ответственностью " + i : "Форма " + i);
+        }
+        return new ReferenceData(countries, countriesById, industries, orgForms, "", Instant.now());
+    }
+
+}